@@ -0,0 +1,69 @@
+package com.github.microprograms.micro_oss_mysql.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.github.microprograms.micro_oss_core.model.Entity;
+import com.github.microprograms.micro_oss_core.model.Field;
+import com.github.microprograms.micro_oss_core.model.dml.query.Condition;
+import com.github.microprograms.micro_oss_core.model.dml.query.Sort;
+
+/**
+ * Commands and rows shared by the benchmarks.
+ */
+public class Fixtures {
+	public static final String TABLE_NAME = "BenchItem";
+
+	/**
+	 * A balanced tree of alternating AND/OR groups, {@code depth} levels deep,
+	 * whose leaves mix string, number and raw {@code in} conditions.
+	 */
+	public static Condition nestedCondition(int depth, int inListSize) {
+		if (depth <= 0) {
+			return Condition.and(Condition.build("name=", "it's a name"), Condition.build("amount>", 100L),
+					Condition.build("id in", inList(inListSize)));
+		}
+		Condition left = nestedCondition(depth - 1, inListSize);
+		Condition right = nestedCondition(depth - 1, inListSize);
+		return depth % 2 == 0 ? Condition.and(left, right) : Condition.or(left, right);
+	}
+
+	public static Condition.RawCondition inList(int size) {
+		StringBuilder sb = new StringBuilder("(");
+		for (int i = 0; i < size; i++) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			sb.append(i);
+		}
+		return Condition.raw("id in", sb.append(')').toString());
+	}
+
+	public static List<Sort> sorts() {
+		List<Sort> sorts = new ArrayList<>();
+		sorts.add(Sort.build("amount", Sort.TypeEnum.desc));
+		sorts.add(Sort.build("id", Sort.TypeEnum.asc));
+		return sorts;
+	}
+
+	public static List<Field> fields(int id) {
+		List<Field> fields = new ArrayList<>();
+		fields.add(new Field("id", id));
+		fields.add(new Field("name", "name-" + id));
+		fields.add(new Field("amount", (long) id * 7));
+		fields.add(new Field("note", "it's note " + id));
+		return fields;
+	}
+
+	public static Entity entity(int id) {
+		return new Entity(TABLE_NAME, fields(id));
+	}
+
+	public static List<Entity> entities(int count) {
+		List<Entity> entities = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			entities.add(entity(i));
+		}
+		return entities;
+	}
+}
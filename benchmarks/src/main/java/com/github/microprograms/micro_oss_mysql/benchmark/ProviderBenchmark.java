@@ -0,0 +1,117 @@
+package com.github.microprograms.micro_oss_mysql.benchmark;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.github.microprograms.micro_oss_core.MicroOssConfig;
+import com.github.microprograms.micro_oss_core.QueryResult;
+import com.github.microprograms.micro_oss_core.model.Field;
+import com.github.microprograms.micro_oss_core.model.dml.query.Condition;
+import com.github.microprograms.micro_oss_core.model.dml.query.PagerRequest;
+import com.github.microprograms.micro_oss_mysql.MysqlMicroOssProvider;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Provider calls end to end against an in-process H2 database in MySQL mode.
+ * The absolute numbers say nothing about a real MySQL server, but the
+ * differences between runs show what the library itself costs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProviderBenchmark {
+	private static final int TABLE_ROWS = 10000;
+
+	@Param({ "false", "true" })
+	private boolean usePreparedStatement;
+
+	private JdbcConnectionPool dataSource;
+	private MysqlMicroOssProvider provider;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		dataSource = JdbcConnectionPool.create(
+				"jdbc:h2:mem:bench;MODE=MySQL;DATABASE_TO_LOWER=TRUE;CASE_INSENSITIVE_IDENTIFIERS=TRUE;DB_CLOSE_DELAY=-1",
+				"sa", "");
+		try (Connection conn = dataSource.getConnection()) {
+			try (Statement st = conn.createStatement()) {
+				st.execute("DROP TABLE IF EXISTS " + Fixtures.TABLE_NAME);
+				st.execute("CREATE TABLE " + Fixtures.TABLE_NAME
+						+ " (id INT PRIMARY KEY, name VARCHAR(255), amount BIGINT, note TEXT)");
+			}
+			try (PreparedStatement ps = conn
+					.prepareStatement("INSERT INTO " + Fixtures.TABLE_NAME + " VALUES (?, ?, ?, ?)")) {
+				for (int i = 0; i < TABLE_ROWS; i++) {
+					ps.setInt(1, i);
+					ps.setString(2, "name-" + i);
+					ps.setLong(3, (long) i * 7);
+					ps.setString(4, "note " + i);
+					ps.addBatch();
+				}
+				ps.executeBatch();
+			}
+		}
+		provider = new MysqlMicroOssProvider(dataSource, new MicroOssConfig());
+		provider.setUsePreparedStatement(usePreparedStatement);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		dataSource.dispose();
+	}
+
+	@Benchmark
+	public QueryResult<BenchItem> queryById() throws Exception {
+		return provider.query(BenchItem.class, Condition.build("id=", randomId()));
+	}
+
+	@Benchmark
+	public List<BenchItem> queryObjectsPage() throws Exception {
+		return provider.queryObjects(BenchItem.class, Condition.build("amount>", 70L), Fixtures.sorts(),
+				new PagerRequest(randomId() % 100, 50));
+	}
+
+	@Benchmark
+	public QueryResult<BenchItem> queryPage() throws Exception {
+		return provider.query(BenchItem.class, Condition.build("amount>", 70L), Fixtures.sorts(),
+				new PagerRequest(randomId() % 100, 50));
+	}
+
+	@Benchmark
+	public int queryCount() throws Exception {
+		return provider.queryCount(BenchItem.class, Condition.build("amount>", (long) randomId()));
+	}
+
+	@Benchmark
+	public int updateById() throws Exception {
+		int id = randomId();
+		List<Field> fields = Collections.singletonList(new Field("note", "updated " + id));
+		return provider.updateObject(BenchItem.class, fields, Condition.build("id=", id));
+	}
+
+	private static int randomId() {
+		return ThreadLocalRandom.current().nextInt(TABLE_ROWS);
+	}
+}
@@ -0,0 +1,87 @@
+package com.github.microprograms.micro_oss_mysql.benchmark;
+
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.github.microprograms.micro_oss_core.model.Entity;
+import com.github.microprograms.micro_oss_mysql.CompactQueryResult;
+import com.github.microprograms.micro_oss_mysql.utils.MysqlUtils;
+import com.github.microprograms.micro_oss_mysql.utils.RowMapper;
+
+import org.h2.tools.SimpleResultSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Maps an in-memory result set into entities, a compact result and typed
+ * objects, so the numbers contain no driver or network cost. The first four
+ * columns match {@link BenchItem}; the rest are extra string columns.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResultMappingBenchmark {
+	@Param({ "4", "16", "64" })
+	private int columns;
+
+	@Param({ "1", "100", "10000" })
+	private int rows;
+
+	private SimpleResultSet rs;
+
+	@Setup
+	public void setup() {
+		rs = new SimpleResultSet();
+		rs.setAutoClose(false);
+		rs.addColumn("id", Types.INTEGER, 10, 0);
+		rs.addColumn("name", Types.VARCHAR, 255, 0);
+		rs.addColumn("amount", Types.BIGINT, 19, 0);
+		rs.addColumn("note", Types.VARCHAR, 255, 0);
+		for (int i = 4; i < columns; i++) {
+			rs.addColumn("c" + i, Types.VARCHAR, 255, 0);
+		}
+		for (int row = 0; row < rows; row++) {
+			Object[] values = new Object[columns];
+			values[0] = row;
+			values[1] = "name-" + row;
+			values[2] = (long) row * 7;
+			values[3] = "note " + row;
+			for (int i = 4; i < columns; i++) {
+				values[i] = "value-" + row + "-" + i;
+			}
+			rs.addRow(values);
+		}
+	}
+
+	@Benchmark
+	public List<Entity> entityList() throws SQLException {
+		rs.beforeFirst();
+		return MysqlUtils.getEntityList(Fixtures.TABLE_NAME, rs);
+	}
+
+	@Benchmark
+	public CompactQueryResult compact() throws SQLException {
+		rs.beforeFirst();
+		return MysqlUtils.getCompactQueryResult(Fixtures.TABLE_NAME, rs);
+	}
+
+	@Benchmark
+	public List<BenchItem> typed() throws SQLException {
+		rs.beforeFirst();
+		return RowMapper.of(BenchItem.class, rs.getMetaData()).mapAll(rs);
+	}
+}
@@ -0,0 +1,115 @@
+package com.github.microprograms.micro_oss_mysql.benchmark;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.github.microprograms.micro_oss_core.model.dml.query.Condition;
+import com.github.microprograms.micro_oss_core.model.dml.query.PagerRequest;
+import com.github.microprograms.micro_oss_core.model.dml.query.SelectCommand;
+import com.github.microprograms.micro_oss_core.model.dml.query.SelectCountCommand;
+import com.github.microprograms.micro_oss_core.model.dml.update.DeleteCommand;
+import com.github.microprograms.micro_oss_core.model.dml.update.InsertCommand;
+import com.github.microprograms.micro_oss_core.model.dml.update.UpdateCommand;
+import com.github.microprograms.micro_oss_mysql.model.dml.InsertBatchCommand;
+import com.github.microprograms.micro_oss_mysql.utils.MysqlUtils;
+import com.github.microprograms.micro_oss_mysql.utils.SqlStatement;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Renders each command type, inline and with bound parameters.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SqlRenderingBenchmark {
+	@Param({ "0", "3", "6" })
+	private int conditionDepth;
+
+	@Param({ "10", "1000" })
+	private int inListSize;
+
+	private InsertCommand insertCommand;
+	private InsertBatchCommand insertBatchCommand;
+	private UpdateCommand updateCommand;
+	private DeleteCommand deleteCommand;
+	private SelectCountCommand selectCountCommand;
+	private SelectCommand selectCommand;
+
+	@Setup
+	public void setup() {
+		Condition where = Fixtures.nestedCondition(conditionDepth, inListSize);
+		List<String> fieldNames = Arrays.asList("id", "name", "amount", "note");
+		insertCommand = new InsertCommand(Fixtures.entity(1));
+		insertBatchCommand = new InsertBatchCommand(Fixtures.entities(1000));
+		updateCommand = new UpdateCommand(Fixtures.TABLE_NAME, Fixtures.fields(1), where);
+		deleteCommand = new DeleteCommand(Fixtures.TABLE_NAME, where);
+		selectCountCommand = new SelectCountCommand(Fixtures.TABLE_NAME, where);
+		selectCommand = new SelectCommand(Fixtures.TABLE_NAME, fieldNames, where, Fixtures.sorts(),
+				new PagerRequest(3, 20));
+	}
+
+	@Benchmark
+	public String insert() {
+		return MysqlUtils.buildSql(insertCommand);
+	}
+
+	@Benchmark
+	public SqlStatement insertBound() {
+		return MysqlUtils.buildStatement(insertCommand, true);
+	}
+
+	@Benchmark
+	public List<SqlStatement> insertBatch() {
+		return MysqlUtils.buildStatements(insertBatchCommand, 1000, 4 * 1024 * 1024, false);
+	}
+
+	@Benchmark
+	public List<SqlStatement> insertBatchBound() {
+		return MysqlUtils.buildStatements(insertBatchCommand, 1000, 4 * 1024 * 1024, true);
+	}
+
+	@Benchmark
+	public String update() {
+		return MysqlUtils.buildSql(updateCommand);
+	}
+
+	@Benchmark
+	public SqlStatement updateBound() {
+		return MysqlUtils.buildStatement(updateCommand, true);
+	}
+
+	@Benchmark
+	public String delete() {
+		return MysqlUtils.buildSql(deleteCommand);
+	}
+
+	@Benchmark
+	public String selectCount() {
+		return MysqlUtils.buildSql(selectCountCommand);
+	}
+
+	@Benchmark
+	public String select() {
+		return MysqlUtils.buildSql(selectCommand);
+	}
+
+	@Benchmark
+	public SqlStatement selectBound() {
+		return MysqlUtils.buildStatement(selectCommand, true);
+	}
+}
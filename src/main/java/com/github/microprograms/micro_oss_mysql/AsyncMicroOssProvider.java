@@ -0,0 +1,324 @@
+package com.github.microprograms.micro_oss_mysql;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.github.microprograms.micro_oss_core.MicroOssProvider;
+import com.github.microprograms.micro_oss_core.QueryResult;
+import com.github.microprograms.micro_oss_core.Transaction;
+import com.github.microprograms.micro_oss_core.model.Field;
+import com.github.microprograms.micro_oss_core.model.ddl.CreateTableCommand;
+import com.github.microprograms.micro_oss_core.model.ddl.DropTableCommand;
+import com.github.microprograms.micro_oss_core.model.dml.query.Condition;
+import com.github.microprograms.micro_oss_core.model.dml.query.PagerRequest;
+import com.github.microprograms.micro_oss_core.model.dml.query.SelectCommand;
+import com.github.microprograms.micro_oss_core.model.dml.query.SelectCountCommand;
+import com.github.microprograms.micro_oss_core.model.dml.query.Sort;
+import com.github.microprograms.micro_oss_core.model.dml.update.DeleteCommand;
+import com.github.microprograms.micro_oss_core.model.dml.update.InsertCommand;
+import com.github.microprograms.micro_oss_core.model.dml.update.UpdateCommand;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the calls of a {@link MicroOssProvider} on an executor and returns
+ * {@link CompletableFuture}s. At most maxInFlight calls run at once and the
+ * calling thread never blocks. With acquireTimeoutMillis 0 a submission beyond
+ * that fails at once with {@link RejectedExecutionException}; otherwise up to
+ * maxWaiting submissions are queued without holding a thread, each handed the
+ * slot of a finishing call or failed after acquireTimeoutMillis. On Java 21+
+ * the default executor uses virtual threads, before that a pool of
+ * maxInFlight threads.
+ */
+public class AsyncMicroOssProvider implements AutoCloseable {
+	private static final Logger log = LoggerFactory.getLogger(AsyncMicroOssProvider.class);
+
+	private final MicroOssProvider provider;
+	private final ExecutorService executor;
+	private final boolean ownsExecutor;
+	private final Semaphore inFlight;
+	private final int maxInFlight;
+	private final Queue<Waiter<?>> waiting = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger waitingCount = new AtomicInteger();
+	private final ScheduledThreadPoolExecutor timer;
+	private long acquireTimeoutMillis;
+	private int maxWaiting;
+
+	public AsyncMicroOssProvider(MicroOssProvider provider, int maxInFlight) {
+		this(provider, createDefaultExecutor(maxInFlight), maxInFlight, true);
+	}
+
+	public AsyncMicroOssProvider(MicroOssProvider provider, ExecutorService executor, int maxInFlight) {
+		this(provider, executor, maxInFlight, false);
+	}
+
+	private AsyncMicroOssProvider(MicroOssProvider provider, ExecutorService executor, int maxInFlight,
+			boolean ownsExecutor) {
+		this.provider = provider;
+		this.executor = executor;
+		this.ownsExecutor = ownsExecutor;
+		this.maxInFlight = maxInFlight;
+		this.maxWaiting = maxInFlight;
+		this.inFlight = new Semaphore(maxInFlight);
+		this.timer = new ScheduledThreadPoolExecutor(1, r -> {
+			Thread thread = new Thread(r, "micro-oss-async-timeout");
+			thread.setDaemon(true);
+			return thread;
+		});
+		timer.setRemoveOnCancelPolicy(true);
+	}
+
+	public MicroOssProvider getProvider() {
+		return provider;
+	}
+
+	public int getMaxInFlight() {
+		return maxInFlight;
+	}
+
+	public int getInFlight() {
+		return maxInFlight - inFlight.availablePermits();
+	}
+
+	public long getAcquireTimeoutMillis() {
+		return acquireTimeoutMillis;
+	}
+
+	// 0: reject at once when maxInFlight calls are pending
+	public void setAcquireTimeoutMillis(long acquireTimeoutMillis) {
+		this.acquireTimeoutMillis = acquireTimeoutMillis;
+	}
+
+	public int getMaxWaiting() {
+		return maxWaiting;
+	}
+
+	// submissions queued for a slot when acquireTimeoutMillis is set, maxInFlight by default
+	public void setMaxWaiting(int maxWaiting) {
+		this.maxWaiting = maxWaiting;
+	}
+
+	public int getWaiting() {
+		return waitingCount.get();
+	}
+
+	public CompletableFuture<Void> createTable(CreateTableCommand command) {
+		return submit(() -> {
+			provider.createTable(command);
+			return null;
+		});
+	}
+
+	public CompletableFuture<Void> dropTable(DropTableCommand command) {
+		return submit(() -> {
+			provider.dropTable(command);
+			return null;
+		});
+	}
+
+	public CompletableFuture<Integer> insertObject(InsertCommand command) {
+		return submit(() -> provider.insertObject(command));
+	}
+
+	public CompletableFuture<Integer> updateObject(UpdateCommand command) {
+		return submit(() -> provider.updateObject(command));
+	}
+
+	public CompletableFuture<Integer> deleteObject(DeleteCommand command) {
+		return submit(() -> provider.deleteObject(command));
+	}
+
+	public CompletableFuture<Integer> queryCount(SelectCountCommand command) {
+		return submit(() -> provider.queryCount(command));
+	}
+
+	public CompletableFuture<QueryResult<?>> query(SelectCommand command) {
+		return submit(() -> provider.query(command));
+	}
+
+	public CompletableFuture<Integer> insertObject(Object object) {
+		return submit(() -> provider.insertObject(object));
+	}
+
+	public CompletableFuture<Integer> updateObject(Class<?> clz, List<Field> fields, Condition where) {
+		return submit(() -> provider.updateObject(clz, fields, where));
+	}
+
+	public CompletableFuture<Integer> deleteObject(Class<?> clz, Condition where) {
+		return submit(() -> provider.deleteObject(clz, where));
+	}
+
+	public CompletableFuture<Integer> queryCount(Class<?> clz, Condition where) {
+		return submit(() -> provider.queryCount(clz, where));
+	}
+
+	public <T> CompletableFuture<QueryResult<T>> query(Class<T> clz, Condition where) {
+		return submit(() -> provider.query(clz, where));
+	}
+
+	public <T> CompletableFuture<QueryResult<T>> query(Class<T> clz, Condition where, List<Sort> sorts) {
+		return submit(() -> provider.query(clz, where, sorts));
+	}
+
+	public <T> CompletableFuture<QueryResult<T>> query(Class<T> clz, Condition where, List<Sort> sorts,
+			PagerRequest pager) {
+		return submit(() -> provider.query(clz, where, sorts, pager));
+	}
+
+	public <T> CompletableFuture<QueryResult<T>> query(Class<T> clz, List<String> fieldNames, Condition where,
+			List<Sort> sorts, PagerRequest pager) {
+		return submit(() -> provider.query(clz, fieldNames, where, sorts, pager));
+	}
+
+	public CompletableFuture<Void> execute(Transaction transaction) {
+		return submit(() -> {
+			provider.execute(transaction);
+			return null;
+		});
+	}
+
+	// runs any other call, e.g. the MysqlMicroOssOperations extensions, under the same limits
+	public <R> CompletableFuture<R> submit(Call<R> call) {
+		CompletableFuture<R> future = new CompletableFuture<>();
+		if (inFlight.tryAcquire()) {
+			dispatch(call, future);
+			return future;
+		}
+		long timeoutMillis = acquireTimeoutMillis;
+		if (timeoutMillis <= 0) {
+			future.completeExceptionally(newRejectedExecutionException());
+			return future;
+		}
+		if (waitingCount.incrementAndGet() > maxWaiting) {
+			waitingCount.decrementAndGet();
+			future.completeExceptionally(newRejectedExecutionException());
+			return future;
+		}
+		Waiter<R> waiter = new Waiter<>(call, future);
+		waiting.add(waiter);
+		try {
+			waiter.timeout = timer.schedule(() -> {
+				if (waiter.claim()) {
+					waiting.remove(waiter);
+					waitingCount.decrementAndGet();
+					future.completeExceptionally(newRejectedExecutionException());
+				}
+			}, timeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			// closed
+			if (waiter.claim()) {
+				waiting.remove(waiter);
+				waitingCount.decrementAndGet();
+				future.completeExceptionally(e);
+			}
+		}
+		// a slot released before the waiter was queued would not have been handed to it
+		if (inFlight.tryAcquire()) {
+			releaseSlot();
+		}
+		return future;
+	}
+
+	private <R> void dispatch(Call<R> call, CompletableFuture<R> future) {
+		try {
+			executor.execute(() -> {
+				try {
+					future.complete(call.call());
+				} catch (Throwable e) {
+					future.completeExceptionally(e);
+				} finally {
+					releaseSlot();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			future.completeExceptionally(e);
+			releaseSlot();
+		}
+	}
+
+	// hands the slot to the oldest waiter, or returns it to the semaphore
+	private void releaseSlot() {
+		for (Waiter<?> waiter; (waiter = waiting.poll()) != null;) {
+			if (waiter.claim()) {
+				waitingCount.decrementAndGet();
+				Future<?> timeout = waiter.timeout;
+				if (timeout != null) {
+					timeout.cancel(false);
+				}
+				waiter.dispatch();
+				return;
+			}
+		}
+		inFlight.release();
+	}
+
+	private RejectedExecutionException newRejectedExecutionException() {
+		return new RejectedExecutionException(String.format("More than %s operations in flight", maxInFlight));
+	}
+
+	@Override
+	public void close() {
+		timer.shutdown();
+		if (ownsExecutor) {
+			executor.shutdown();
+		}
+	}
+
+	private class Waiter<R> {
+		final Call<R> call;
+		final CompletableFuture<R> future;
+		final AtomicBoolean claimed = new AtomicBoolean();
+		volatile Future<?> timeout;
+
+		Waiter(Call<R> call, CompletableFuture<R> future) {
+			this.call = call;
+			this.future = future;
+		}
+
+		// true for whichever of the slot hand-off and the timeout comes first
+		boolean claim() {
+			return claimed.compareAndSet(false, true);
+		}
+
+		void dispatch() {
+			AsyncMicroOssProvider.this.dispatch(call, future);
+		}
+	}
+
+	public interface Call<R> {
+		R call() throws Exception;
+	}
+
+	private static ExecutorService createDefaultExecutor(int maxInFlight) {
+		try {
+			// Java 21+
+			ExecutorService executor = (ExecutorService) Executors.class
+					.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+			log.debug("async provider uses virtual threads");
+			return executor;
+		} catch (ReflectiveOperationException e) {
+			// a call holds a slot from before it is queued until it ends, so at most maxInFlight are queued
+			AtomicInteger threadNumber = new AtomicInteger();
+			return new ThreadPoolExecutor(maxInFlight, maxInFlight, 0, TimeUnit.MILLISECONDS,
+					new ArrayBlockingQueue<>(maxInFlight), r -> {
+						Thread thread = new Thread(r, "micro-oss-async-" + threadNumber.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}, new ThreadPoolExecutor.AbortPolicy());
+		}
+	}
+}
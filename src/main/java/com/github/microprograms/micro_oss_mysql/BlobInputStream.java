@@ -0,0 +1,179 @@
+package com.github.microprograms.micro_oss_mysql;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads an object written by {@link BlobOutputStream}, fetching one chunk at
+ * a time when the previous one is used up; skip() seeks without reading the
+ * chunks in between. When the stream owns its connection, all chunks are read
+ * in one transaction, so a concurrent rewrite is not mixed in, and close()
+ * releases the connection.
+ */
+public class BlobInputStream extends InputStream {
+	private static final Logger log = LoggerFactory.getLogger(BlobInputStream.class);
+
+	private final RawMysqlMicroOssProvider provider;
+	private final Connection conn;
+	private final String blobId;
+	private final boolean closeConnection;
+	private Chunk chunk;
+	private int index;
+	// of the next byte
+	private long position;
+	// -1: up to the end of the object
+	private long remaining;
+	private boolean eof;
+	private boolean closed;
+
+	BlobInputStream(RawMysqlMicroOssProvider provider, Connection conn, String blobId, long offset, long length,
+			boolean closeConnection) {
+		this.provider = provider;
+		this.conn = conn;
+		this.blobId = blobId;
+		this.position = offset;
+		this.remaining = length;
+		this.closeConnection = closeConnection;
+	}
+
+	public String getBlobId() {
+		return blobId;
+	}
+
+	public long getPosition() {
+		return position;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!fill()) {
+			return -1;
+		}
+		consume(1);
+		return chunk.data[index - 1] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (off < 0 || len < 0 || len > b.length - off) {
+			throw new IndexOutOfBoundsException();
+		}
+		if (len == 0) {
+			return 0;
+		}
+		if (!fill()) {
+			return -1;
+		}
+		int n = (int) Math.min(len, getAvailable());
+		System.arraycopy(chunk.data, index, b, off, n);
+		consume(n);
+		return n;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		ensureOpen();
+		if (n <= 0 || eof) {
+			return 0;
+		}
+		long skipped = remaining >= 0 ? Math.min(n, remaining) : n;
+		if (chunk != null && skipped < chunk.data.length - index) {
+			index += (int) skipped;
+		} else {
+			// seek on the next read; may pass the end of the object
+			chunk = null;
+		}
+		position += skipped;
+		if (remaining >= 0) {
+			remaining -= skipped;
+		}
+		return skipped;
+	}
+
+	@Override
+	public int available() throws IOException {
+		ensureOpen();
+		return chunk == null ? 0 : (int) getAvailable();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		chunk = null;
+		if (closeConnection) {
+			try {
+				conn.commit();
+				conn.setAutoCommit(true);
+			} catch (SQLException e) {
+				throw new IOException(e);
+			} finally {
+				try {
+					conn.close();
+				} catch (SQLException e) {
+					// ignore
+					log.warn("", e);
+				}
+			}
+		}
+	}
+
+	private void ensureOpen() throws IOException {
+		if (closed) {
+			throw new IOException("Blob input stream is closed");
+		}
+	}
+
+	private long getAvailable() {
+		long available = chunk.data.length - index;
+		return remaining >= 0 ? Math.min(available, remaining) : available;
+	}
+
+	private void consume(int n) {
+		index += n;
+		position += n;
+		if (remaining >= 0) {
+			remaining -= n;
+		}
+	}
+
+	private boolean fill() throws IOException {
+		ensureOpen();
+		if (eof || remaining == 0) {
+			return false;
+		}
+		if (chunk != null && index < chunk.data.length) {
+			return true;
+		}
+		try {
+			// the chunk that holds position; the next one when the current one is used up
+			chunk = provider._readBlobChunk(conn, blobId, position);
+		} catch (SQLException e) {
+			throw new IOException(e);
+		}
+		if (chunk == null || position >= chunk.position + chunk.data.length) {
+			chunk = null;
+			eof = true;
+			return false;
+		}
+		index = (int) (position - chunk.position);
+		return true;
+	}
+
+	static class Chunk {
+		final long position;
+		final byte[] data;
+
+		Chunk(long position, byte[] data) {
+			this.position = position;
+			this.data = data;
+		}
+	}
+}
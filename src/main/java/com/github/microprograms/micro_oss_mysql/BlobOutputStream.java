@@ -0,0 +1,164 @@
+package com.github.microprograms.micro_oss_mysql;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes an object as rows of at most chunkSize bytes in the blob chunk table,
+ * keyed by blob id and byte position, so one chunk is held in memory and sent
+ * per statement. The chunks replace the old object only when commit() is
+ * called; close() without it rolls them back, so an upload cut short by an
+ * exception leaves the stored object as it was. When the stream owns its
+ * connection this is its own transaction, on a transaction's connection it is
+ * a savepoint in the enclosing transaction.
+ */
+public class BlobOutputStream extends OutputStream {
+	private static final Logger log = LoggerFactory.getLogger(BlobOutputStream.class);
+
+	private final RawMysqlMicroOssProvider provider;
+	private final Connection conn;
+	private final String blobId;
+	private final byte[] buffer;
+	private final boolean closeConnection;
+	private final Savepoint savepoint;
+	private int count;
+	private long position;
+	private boolean failed;
+	private boolean committed;
+	private boolean closed;
+
+	// savepoint: set before the old object was deleted when the stream does not own its connection
+	BlobOutputStream(RawMysqlMicroOssProvider provider, Connection conn, String blobId, int chunkSize,
+			boolean closeConnection, Savepoint savepoint) {
+		this.provider = provider;
+		this.conn = conn;
+		this.blobId = blobId;
+		this.buffer = new byte[chunkSize];
+		this.closeConnection = closeConnection;
+		this.savepoint = savepoint;
+	}
+
+	public String getBlobId() {
+		return blobId;
+	}
+
+	// bytes written so far
+	public long getPosition() {
+		return position + count;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		ensureOpen();
+		buffer[count++] = (byte) b;
+		if (count == buffer.length) {
+			writeChunk();
+		}
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (off < 0 || len < 0 || len > b.length - off) {
+			throw new IndexOutOfBoundsException();
+		}
+		ensureOpen();
+		while (len > 0) {
+			int n = Math.min(len, buffer.length - count);
+			System.arraycopy(b, off, buffer, count, n);
+			count += n;
+			off += n;
+			len -= n;
+			if (count == buffer.length) {
+				writeChunk();
+			}
+		}
+	}
+
+	// writes the last chunk and stores the object, then closes the stream
+	public void commit() throws IOException {
+		ensureOpen();
+		try {
+			// an empty object still gets one empty chunk, so that it exists
+			if (count > 0 || position == 0) {
+				writeChunk();
+			}
+			committed = true;
+		} finally {
+			closed = true;
+			release(committed);
+		}
+	}
+
+	// rolls back the chunks written through this stream unless commit() was called
+	@Override
+	public void close() throws IOException {
+		if (!closed) {
+			closed = true;
+			release(false);
+		}
+	}
+
+	public void abort() throws IOException {
+		close();
+	}
+
+	private void ensureOpen() throws IOException {
+		if (closed) {
+			throw new IOException("Blob output stream is closed");
+		}
+		if (failed) {
+			throw new IOException("Blob output stream failed");
+		}
+	}
+
+	private void writeChunk() throws IOException {
+		try {
+			provider._writeBlobChunk(conn, blobId, position,
+					count == buffer.length ? buffer : Arrays.copyOf(buffer, count));
+		} catch (SQLException e) {
+			failed = true;
+			throw new IOException(e);
+		}
+		position += count;
+		count = 0;
+	}
+
+	private void release(boolean commit) throws IOException {
+		if (!closeConnection) {
+			try {
+				if (commit) {
+					conn.releaseSavepoint(savepoint);
+				} else {
+					conn.rollback(savepoint);
+				}
+			} catch (SQLException e) {
+				throw new IOException(e);
+			}
+			return;
+		}
+		try {
+			if (commit) {
+				conn.commit();
+			} else {
+				conn.rollback();
+			}
+		} catch (SQLException e) {
+			throw new IOException(e);
+		} finally {
+			try {
+				conn.setAutoCommit(true);
+				conn.close();
+			} catch (SQLException e) {
+				// ignore
+				log.warn("", e);
+			}
+		}
+	}
+}
@@ -0,0 +1,26 @@
+package com.github.microprograms.micro_oss_mysql;
+
+public class BulkLoadResult {
+	private int rows;
+	private int warnings;
+
+	public BulkLoadResult(int rows, int warnings) {
+		this.rows = rows;
+		this.warnings = warnings;
+	}
+
+	// rows written to the table
+	public int getRows() {
+		return rows;
+	}
+
+	// @@warning_count after the load, e.g. truncated values or skipped duplicates
+	public int getWarnings() {
+		return warnings;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("rows=%s warnings=%s", rows, warnings);
+	}
+}
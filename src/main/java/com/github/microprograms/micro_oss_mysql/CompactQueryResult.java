@@ -0,0 +1,98 @@
+package com.github.microprograms.micro_oss_mysql;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.github.microprograms.micro_oss_core.QueryResult;
+import com.github.microprograms.micro_oss_core.model.Entity;
+import com.github.microprograms.micro_oss_core.model.Field;
+
+/**
+ * Query result that stores one shared column header and one {@code Object[]}
+ * per row. {@link Entity} views are only built when asked for.
+ */
+public class CompactQueryResult {
+	private final String tableName;
+	private final String[] columnLabels;
+	private final List<Object[]> rows;
+	private volatile Map<String, Integer> columnIndexes;
+
+	public CompactQueryResult(String tableName, String[] columnLabels, List<Object[]> rows) {
+		this.tableName = tableName;
+		this.columnLabels = columnLabels;
+		this.rows = rows;
+	}
+
+	public String getTableName() {
+		return tableName;
+	}
+
+	public String[] getColumnLabels() {
+		return columnLabels.clone();
+	}
+
+	public int getColumnCount() {
+		return columnLabels.length;
+	}
+
+	public int getRowCount() {
+		return rows.size();
+	}
+
+	public List<Object[]> getRows() {
+		return Collections.unmodifiableList(rows);
+	}
+
+	public Object getValue(int rowIndex, int columnIndex) {
+		return rows.get(rowIndex)[columnIndex];
+	}
+
+	public Object getValue(int rowIndex, String columnLabel) {
+		int columnIndex = getColumnIndex(columnLabel);
+		return columnIndex < 0 ? null : rows.get(rowIndex)[columnIndex];
+	}
+
+	public int getColumnIndex(String columnLabel) {
+		Map<String, Integer> indexes = columnIndexes;
+		if (indexes == null) {
+			indexes = new HashMap<>();
+			for (int i = columnLabels.length - 1; i >= 0; i--) {
+				indexes.put(columnLabels[i], i);
+			}
+			columnIndexes = indexes;
+		}
+		Integer columnIndex = indexes.get(columnLabel);
+		return columnIndex == null ? -1 : columnIndex;
+	}
+
+	public Entity getEntity(int rowIndex) {
+		Object[] row = rows.get(rowIndex);
+		List<Field> fields = new ArrayList<>(columnLabels.length);
+		for (int i = 0; i < columnLabels.length; i++) {
+			fields.add(new Field(columnLabels[i], row[i]));
+		}
+		return new Entity(tableName, fields);
+	}
+
+	public List<Entity> getEntities() {
+		return new AbstractList<Entity>() {
+			@Override
+			public Entity get(int index) {
+				return getEntity(index);
+			}
+
+			@Override
+			public int size() {
+				return rows.size();
+			}
+		};
+	}
+
+	public <T> QueryResult<T> toQueryResult() {
+		return new QueryResult<>(getEntities());
+	}
+}
@@ -0,0 +1,20 @@
+package com.github.microprograms.micro_oss_mysql;
+
+public enum CountMode {
+	/**
+	 * SELECT COUNT(*), always current, scans the matching rows.
+	 */
+	exact,
+	/**
+	 * The optimizer's estimate: information_schema.TABLES.TABLE_ROWS without a
+	 * Condition or Join, the rows column of EXPLAIN otherwise. Cheap, but
+	 * InnoDB estimates can be off by tens of percent.
+	 */
+	estimated,
+	/**
+	 * An exact count kept in the provider's count cache until its TTL expires
+	 * or a write through the provider touches one of its tables; exact when no
+	 * count cache is set.
+	 */
+	cached
+}
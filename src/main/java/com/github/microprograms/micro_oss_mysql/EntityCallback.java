@@ -0,0 +1,7 @@
+package com.github.microprograms.micro_oss_mysql;
+
+import com.github.microprograms.micro_oss_core.model.Entity;
+
+public interface EntityCallback {
+	void accept(Entity entity) throws Exception;
+}
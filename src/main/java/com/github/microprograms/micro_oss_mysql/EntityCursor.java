@@ -0,0 +1,109 @@
+package com.github.microprograms.micro_oss_mysql;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.github.microprograms.micro_oss_core.model.Entity;
+import com.github.microprograms.micro_oss_core.model.Field;
+import com.github.microprograms.micro_oss_mysql.utils.MysqlUtils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Forward-only iterator over a streamed result set. Rows are read from the
+ * server one at a time, so the cursor must be closed to release the statement
+ * (and, for pooled providers, the connection).
+ */
+public class EntityCursor implements Iterator<Entity>, AutoCloseable {
+	private static final Logger log = LoggerFactory.getLogger(EntityCursor.class);
+
+	private final String tableName;
+	private final Statement stmt;
+	private final ResultSet rs;
+	private final Connection conn;
+	private final String[] columnLabels;
+	private Boolean hasNext;
+	private boolean closed;
+
+	EntityCursor(String tableName, Statement stmt, ResultSet rs, Connection conn) throws SQLException {
+		this.tableName = tableName;
+		this.stmt = stmt;
+		this.rs = rs;
+		this.conn = conn;
+		this.columnLabels = MysqlUtils.getColumnLabels(rs.getMetaData());
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (hasNext == null) {
+			try {
+				hasNext = !closed && rs.next();
+			} catch (SQLException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		return hasNext;
+	}
+
+	@Override
+	public Entity next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		hasNext = null;
+		try {
+			List<Field> fields = new ArrayList<>(columnLabels.length);
+			for (int i = 0; i < columnLabels.length; i++) {
+				fields.add(new Field(columnLabels[i], rs.getObject(i + 1)));
+			}
+			return new Entity(tableName, fields);
+		} catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	public Stream<Entity> stream() {
+		return StreamSupport
+				.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+				.onClose(this::close);
+	}
+
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			rs.close();
+		} catch (SQLException e) {
+			// ignore
+			log.warn("", e);
+		}
+		try {
+			stmt.close();
+		} catch (SQLException e) {
+			// ignore
+			log.warn("", e);
+		}
+		if (conn != null) {
+			try {
+				conn.close();
+			} catch (SQLException e) {
+				// ignore
+				log.warn("", e);
+			}
+		}
+	}
+}
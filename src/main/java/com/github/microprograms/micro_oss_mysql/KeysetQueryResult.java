@@ -0,0 +1,26 @@
+package com.github.microprograms.micro_oss_mysql;
+
+import com.github.microprograms.micro_oss_core.QueryResult;
+
+public class KeysetQueryResult<T> {
+	private QueryResult<T> queryResult;
+	private String nextToken;
+
+	public KeysetQueryResult(QueryResult<T> queryResult, String nextToken) {
+		this.queryResult = queryResult;
+		this.nextToken = nextToken;
+	}
+
+	public QueryResult<T> getQueryResult() {
+		return queryResult;
+	}
+
+	// null when this is the last page
+	public String getNextToken() {
+		return nextToken;
+	}
+
+	public boolean hasNextPage() {
+		return nextToken != null;
+	}
+}
@@ -0,0 +1,98 @@
+package com.github.microprograms.micro_oss_mysql;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+import com.github.microprograms.micro_oss_core.MicroOssProvider;
+import com.github.microprograms.micro_oss_core.exception.MicroOssException;
+import com.github.microprograms.micro_oss_core.model.Entity;
+import com.github.microprograms.micro_oss_core.model.ddl.CreateTableCommand;
+import com.github.microprograms.micro_oss_core.model.dml.query.Condition;
+import com.github.microprograms.micro_oss_core.model.dml.query.PagerRequest;
+import com.github.microprograms.micro_oss_core.model.dml.query.SelectCommand;
+import com.github.microprograms.micro_oss_core.model.dml.query.SelectCountCommand;
+import com.github.microprograms.micro_oss_core.model.dml.query.Sort;
+import com.github.microprograms.micro_oss_mysql.model.ddl.IndexDefinition;
+import com.github.microprograms.micro_oss_mysql.model.ddl.MysqlTableDefinition;
+import com.github.microprograms.micro_oss_mysql.model.dml.InsertBatchCommand;
+import com.github.microprograms.micro_oss_mysql.model.dml.KeysetPager;
+import com.github.microprograms.micro_oss_mysql.model.dml.PipelineCommand;
+import com.github.microprograms.micro_oss_mysql.model.dml.UpsertCommand;
+
+public interface MysqlMicroOssOperations extends MicroOssProvider {
+
+	void createTable(CreateTableCommand command, MysqlTableDefinition mysqlDefinition) throws MicroOssException;
+
+	List<String> ensureIndexes(String tableName, List<IndexDefinition> indexes) throws MicroOssException;
+
+	List<String> ensureIndexes(Class<?> clz, List<IndexDefinition> indexes) throws MicroOssException;
+
+	int[] insertObjects(InsertBatchCommand command) throws MicroOssException;
+
+	int[] insertObjects(Collection<?> objects) throws MicroOssException;
+
+	int[] upsertObjects(UpsertCommand command) throws MicroOssException;
+
+	int[] upsertObjects(Collection<?> objects, List<String> primaryKeyFieldNames, List<String> updateFieldNames)
+			throws MicroOssException;
+
+	// entities.iterator() or stream.iterator(); see RawMysqlMicroOssProvider#loadEntities
+	BulkLoadResult loadEntities(Iterator<Entity> entities) throws MicroOssException;
+
+	BulkLoadResult loadObjects(Iterator<?> objects) throws MicroOssException;
+
+	List<Object> executePipeline(PipelineCommand command) throws MicroOssException;
+
+	void createBlobTable() throws MicroOssException;
+
+	// commit() stores the object, see BlobOutputStream
+	BlobOutputStream openBlobOutputStream(String blobId) throws MicroOssException;
+
+	BlobInputStream openBlobInputStream(String blobId) throws MicroOssException;
+
+	// length: -1 up to the end of the object
+	BlobInputStream openBlobInputStream(String blobId, long offset, long length) throws MicroOssException;
+
+	// -1 when there is no such object
+	long getBlobLength(String blobId) throws MicroOssException;
+
+	int deleteBlob(String blobId) throws MicroOssException;
+
+	CompactQueryResult queryCompact(SelectCommand command) throws MicroOssException;
+
+	EntityCursor openCursor(SelectCommand command) throws MicroOssException;
+
+	int query(SelectCommand command, EntityCallback callback) throws MicroOssException;
+
+	KeysetQueryResult<?> queryByKeyset(SelectCommand command, KeysetPager pager) throws MicroOssException;
+
+	<T> KeysetQueryResult<T> queryByKeyset(Class<T> clz, Condition where, List<Sort> sorts, KeysetPager pager)
+			throws MicroOssException;
+
+	<T> KeysetQueryResult<T> queryByKeyset(Class<T> clz, List<String> fieldNames, Condition where, List<Sort> sorts,
+			KeysetPager pager) throws MicroOssException;
+
+	int queryCount(SelectCountCommand command, CountMode mode) throws MicroOssException;
+
+	int queryCount(Class<?> clz, Condition where, CountMode mode) throws MicroOssException;
+
+	// knownTotal: the total from an earlier page to skip counting, or null
+	PageQueryResult<?> queryPage(SelectCommand command, Integer knownTotal) throws MicroOssException;
+
+	<T> PageQueryResult<T> queryPage(Class<T> clz, Condition where, List<Sort> sorts, PagerRequest pager,
+			Integer knownTotal) throws MicroOssException;
+
+	<T> PageQueryResult<T> queryPage(Class<T> clz, List<String> fieldNames, Condition where, List<Sort> sorts,
+			PagerRequest pager, Integer knownTotal) throws MicroOssException;
+
+	<T> List<T> queryObjects(Class<T> clz, Condition where, List<Sort> sorts, PagerRequest pager)
+			throws MicroOssException;
+
+	<T> List<T> queryObjects(Class<T> clz, List<String> fieldNames, Condition where, List<Sort> sorts,
+			PagerRequest pager) throws MicroOssException;
+
+	// selects only the columns of dtoClass's fields from the table of entityClass
+	<T> List<T> queryProjection(Class<?> entityClass, Class<T> dtoClass, Condition where, List<Sort> sorts,
+			PagerRequest pager) throws MicroOssException;
+}
@@ -1,15 +1,18 @@
 package com.github.microprograms.micro_oss_mysql;
 
 import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 
 import javax.sql.DataSource;
 
 import com.github.microprograms.micro_oss_core.MicroOssConfig;
-import com.github.microprograms.micro_oss_core.MicroOssProvider;
 import com.github.microprograms.micro_oss_core.QueryResult;
 import com.github.microprograms.micro_oss_core.Transaction;
 import com.github.microprograms.micro_oss_core.exception.MicroOssException;
+import com.github.microprograms.micro_oss_core.model.Entity;
 import com.github.microprograms.micro_oss_core.model.Field;
 import com.github.microprograms.micro_oss_core.model.ddl.CreateTableCommand;
 import com.github.microprograms.micro_oss_core.model.ddl.DropTableCommand;
@@ -21,8 +24,20 @@ import com.github.microprograms.micro_oss_core.model.dml.query.Sort;
 import com.github.microprograms.micro_oss_core.model.dml.update.DeleteCommand;
 import com.github.microprograms.micro_oss_core.model.dml.update.InsertCommand;
 import com.github.microprograms.micro_oss_core.model.dml.update.UpdateCommand;
+import com.github.microprograms.micro_oss_mysql.cache.QueryResultCache;
+import com.github.microprograms.micro_oss_mysql.model.ddl.IndexDefinition;
+import com.github.microprograms.micro_oss_mysql.model.ddl.MysqlTableDefinition;
+import com.github.microprograms.micro_oss_mysql.model.dml.InsertBatchCommand;
+import com.github.microprograms.micro_oss_mysql.model.dml.KeysetPager;
+import com.github.microprograms.micro_oss_mysql.model.dml.PipelineCommand;
+import com.github.microprograms.micro_oss_mysql.model.dml.UpsertCommand;
+import com.github.microprograms.micro_oss_mysql.utils.MysqlUtils;
 
-public class MysqlMicroOssProvider extends RawMysqlMicroOssProvider implements MicroOssProvider {
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class MysqlMicroOssProvider extends RawMysqlMicroOssProvider implements MysqlMicroOssOperations {
+	private static final Logger log = LoggerFactory.getLogger(MysqlMicroOssProvider.class);
 
 	private DataSource dataSource;
 
@@ -31,18 +46,54 @@ public class MysqlMicroOssProvider extends RawMysqlMicroOssProvider implements M
 		this.dataSource = dataSource;
 	}
 
+	public DataSource getDataSource() {
+		return dataSource;
+	}
+
+	protected Connection getReadConnection() throws SQLException {
+		return _getConnection(dataSource);
+	}
+
+	protected Connection getWriteConnection() throws SQLException {
+		return _getConnection(dataSource);
+	}
+
 	@Override
 	public void createTable(CreateTableCommand command) throws MicroOssException {
-		try (Connection conn = dataSource.getConnection()) {
+		try (Connection conn = getWriteConnection()) {
 			createTable(conn, command);
 		} catch (Exception e) {
 			throw new MicroOssException(e);
 		}
 	}
 
+	@Override
+	public void createTable(CreateTableCommand command, MysqlTableDefinition mysqlDefinition)
+			throws MicroOssException {
+		try (Connection conn = getWriteConnection()) {
+			createTable(conn, command, mysqlDefinition);
+		} catch (Exception e) {
+			throw new MicroOssException(e);
+		}
+	}
+
+	@Override
+	public List<String> ensureIndexes(String tableName, List<IndexDefinition> indexes) throws MicroOssException {
+		try (Connection conn = getWriteConnection()) {
+			return ensureIndexes(conn, tableName, indexes);
+		} catch (Exception e) {
+			throw new MicroOssException(e);
+		}
+	}
+
+	@Override
+	public List<String> ensureIndexes(Class<?> clz, List<IndexDefinition> indexes) throws MicroOssException {
+		return ensureIndexes(_getTableName(clz), indexes);
+	}
+
 	@Override
 	public void dropTable(DropTableCommand command) throws MicroOssException {
-		try (Connection conn = dataSource.getConnection()) {
+		try (Connection conn = getWriteConnection()) {
 			dropTable(conn, command);
 		} catch (Exception e) {
 			throw new MicroOssException(e);
@@ -51,7 +102,7 @@ public class MysqlMicroOssProvider extends RawMysqlMicroOssProvider implements M
 
 	@Override
 	public int insertObject(InsertCommand command) throws MicroOssException {
-		try (Connection conn = dataSource.getConnection()) {
+		try (Connection conn = getWriteConnection()) {
 			return insertObject(conn, command);
 		} catch (Exception e) {
 			throw new MicroOssException(e);
@@ -60,7 +111,7 @@ public class MysqlMicroOssProvider extends RawMysqlMicroOssProvider implements M
 
 	@Override
 	public int updateObject(UpdateCommand command) throws MicroOssException {
-		try (Connection conn = dataSource.getConnection()) {
+		try (Connection conn = getWriteConnection()) {
 			return updateObject(conn, command);
 		} catch (Exception e) {
 			throw new MicroOssException(e);
@@ -69,7 +120,7 @@ public class MysqlMicroOssProvider extends RawMysqlMicroOssProvider implements M
 
 	@Override
 	public int deleteObject(DeleteCommand command) throws MicroOssException {
-		try (Connection conn = dataSource.getConnection()) {
+		try (Connection conn = getWriteConnection()) {
 			return deleteObject(conn, command);
 		} catch (Exception e) {
 			throw new MicroOssException(e);
@@ -78,8 +129,25 @@ public class MysqlMicroOssProvider extends RawMysqlMicroOssProvider implements M
 
 	@Override
 	public int queryCount(SelectCountCommand command) throws MicroOssException {
-		try (Connection conn = dataSource.getConnection()) {
-			return queryCount(conn, command);
+		QueryResultCache cache = getResultCache();
+		if (cache == null) {
+			try (Connection conn = getReadConnection()) {
+				return queryCount(conn, command);
+			} catch (Exception e) {
+				throw new MicroOssException(e);
+			}
+		}
+		String key = MysqlUtils.buildSql(command);
+		Object cached = cache.get(key);
+		if (cached != null) {
+			return (Integer) cached;
+		}
+		List<String> tableNames = MysqlUtils.getTableNames(command);
+		long version = cache.getVersion();
+		try (Connection conn = getReadConnection()) {
+			int count = queryCount(conn, command);
+			cache.put(key, tableNames, count, version);
+			return count;
 		} catch (Exception e) {
 			throw new MicroOssException(e);
 		}
@@ -87,8 +155,30 @@ public class MysqlMicroOssProvider extends RawMysqlMicroOssProvider implements M
 
 	@Override
 	public QueryResult<?> query(SelectCommand command) throws MicroOssException {
-		try (Connection conn = dataSource.getConnection()) {
-			return query(conn, command);
+		return new QueryResult<>(queryEntities(command));
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<Entity> queryEntities(SelectCommand command) throws MicroOssException {
+		QueryResultCache cache = getResultCache();
+		if (cache == null) {
+			try (Connection conn = getReadConnection()) {
+				return queryEntities(conn, command);
+			} catch (Exception e) {
+				throw new MicroOssException(e);
+			}
+		}
+		String key = MysqlUtils.buildSql(command);
+		Object cached = cache.get(key);
+		if (cached != null) {
+			return (List<Entity>) cached;
+		}
+		List<String> tableNames = MysqlUtils.getTableNames(command);
+		long version = cache.getVersion();
+		try (Connection conn = getReadConnection()) {
+			List<Entity> entities = queryEntities(conn, command);
+			cache.put(key, tableNames, entities, version);
+			return entities;
 		} catch (Exception e) {
 			throw new MicroOssException(e);
 		}
@@ -96,16 +186,287 @@ public class MysqlMicroOssProvider extends RawMysqlMicroOssProvider implements M
 
 	@Override
 	public int insertObject(Object object) throws MicroOssException {
-		try (Connection conn = dataSource.getConnection()) {
+		try (Connection conn = getWriteConnection()) {
 			return insertObject(conn, object);
 		} catch (Exception e) {
 			throw new MicroOssException(e);
 		}
 	}
 
+	@Override
+	public CompactQueryResult queryCompact(SelectCommand command) throws MicroOssException {
+		try (Connection conn = getReadConnection()) {
+			return queryCompact(conn, command);
+		} catch (Exception e) {
+			throw new MicroOssException(e);
+		}
+	}
+
+	@Override
+	public EntityCursor openCursor(SelectCommand command) throws MicroOssException {
+		Connection conn = null;
+		try {
+			conn = getReadConnection();
+			return openCursor(conn, command, true);
+		} catch (Exception e) {
+			if (conn != null) {
+				try {
+					conn.close();
+				} catch (SQLException sqlException) {
+					// ignore
+					log.warn("", sqlException);
+				}
+			}
+			throw new MicroOssException(e);
+		}
+	}
+
+	@Override
+	public int query(SelectCommand command, EntityCallback callback) throws MicroOssException {
+		try (Connection conn = getReadConnection()) {
+			return query(conn, command, callback);
+		} catch (Exception e) {
+			throw new MicroOssException(e);
+		}
+	}
+
+	@Override
+	public KeysetQueryResult<?> queryByKeyset(SelectCommand command, KeysetPager pager) throws MicroOssException {
+		try (Connection conn = getReadConnection()) {
+			return queryByKeyset(conn, command, pager);
+		} catch (Exception e) {
+			throw new MicroOssException(e);
+		}
+	}
+
+	@Override
+	public <T> KeysetQueryResult<T> queryByKeyset(Class<T> clz, Condition where, List<Sort> sorts, KeysetPager pager)
+			throws MicroOssException {
+		return queryByKeyset(clz, null, where, sorts, pager);
+	}
+
+	@Override
+	public <T> KeysetQueryResult<T> queryByKeyset(Class<T> clz, List<String> fieldNames, Condition where,
+			List<Sort> sorts, KeysetPager pager) throws MicroOssException {
+		try (Connection conn = getReadConnection()) {
+			return queryByKeyset(conn, clz, fieldNames, where, sorts, pager);
+		} catch (Exception e) {
+			throw new MicroOssException(e);
+		}
+	}
+
+	@Override
+	public int queryCount(SelectCountCommand command, CountMode mode) throws MicroOssException {
+		try {
+			if (mode == CountMode.cached && getCountCache() != null) {
+				// a hit does not check out a connection
+				return _queryCachedCount(command, () -> {
+					try (Connection conn = getReadConnection()) {
+						return queryCount(conn, command);
+					}
+				});
+			}
+			try (Connection conn = getReadConnection()) {
+				return queryCount(conn, command, mode);
+			}
+		} catch (Exception e) {
+			throw new MicroOssException(e);
+		}
+	}
+
+	@Override
+	public int queryCount(Class<?> clz, Condition where, CountMode mode) throws MicroOssException {
+		return queryCount(new SelectCountCommand(_getTableName(clz), where), mode);
+	}
+
+	@Override
+	public PageQueryResult<?> queryPage(SelectCommand command, Integer knownTotal) throws MicroOssException {
+		try (Connection conn = getReadConnection()) {
+			return queryPage(conn, command, knownTotal);
+		} catch (Exception e) {
+			throw new MicroOssException(e);
+		}
+	}
+
+	@Override
+	public <T> PageQueryResult<T> queryPage(Class<T> clz, Condition where, List<Sort> sorts, PagerRequest pager,
+			Integer knownTotal) throws MicroOssException {
+		return queryPage(clz, null, where, sorts, pager, knownTotal);
+	}
+
+	@Override
+	public <T> PageQueryResult<T> queryPage(Class<T> clz, List<String> fieldNames, Condition where, List<Sort> sorts,
+			PagerRequest pager, Integer knownTotal) throws MicroOssException {
+		try (Connection conn = getReadConnection()) {
+			return queryPage(conn, clz, fieldNames, where, sorts, pager, knownTotal);
+		} catch (Exception e) {
+			throw new MicroOssException(e);
+		}
+	}
+
+	@Override
+	public <T> List<T> queryObjects(Class<T> clz, Condition where, List<Sort> sorts, PagerRequest pager)
+			throws MicroOssException {
+		return queryObjects(clz, null, where, sorts, pager);
+	}
+
+	@Override
+	public <T> List<T> queryObjects(Class<T> clz, List<String> fieldNames, Condition where, List<Sort> sorts,
+			PagerRequest pager) throws MicroOssException {
+		try (Connection conn = getReadConnection()) {
+			return queryObjects(conn, clz, fieldNames, where, sorts, pager);
+		} catch (Exception e) {
+			throw new MicroOssException(e);
+		}
+	}
+
+	@Override
+	public <T> List<T> queryProjection(Class<?> entityClass, Class<T> dtoClass, Condition where, List<Sort> sorts,
+			PagerRequest pager) throws MicroOssException {
+		try (Connection conn = getReadConnection()) {
+			return queryProjection(conn, entityClass, dtoClass, where, sorts, pager);
+		} catch (Exception e) {
+			throw new MicroOssException(e);
+		}
+	}
+
+	@Override
+	public int[] insertObjects(InsertBatchCommand command) throws MicroOssException {
+		try (Connection conn = getWriteConnection()) {
+			return insertObjects(conn, command);
+		} catch (Exception e) {
+			throw new MicroOssException(e);
+		}
+	}
+
+	@Override
+	public int[] insertObjects(Collection<?> objects) throws MicroOssException {
+		try (Connection conn = getWriteConnection()) {
+			return insertObjects(conn, objects);
+		} catch (Exception e) {
+			throw new MicroOssException(e);
+		}
+	}
+
+	@Override
+	public int[] upsertObjects(UpsertCommand command) throws MicroOssException {
+		try (Connection conn = getWriteConnection()) {
+			return upsertObjects(conn, command);
+		} catch (Exception e) {
+			throw new MicroOssException(e);
+		}
+	}
+
+	@Override
+	public int[] upsertObjects(Collection<?> objects, List<String> primaryKeyFieldNames,
+			List<String> updateFieldNames) throws MicroOssException {
+		try (Connection conn = getWriteConnection()) {
+			return upsertObjects(conn, objects, primaryKeyFieldNames, updateFieldNames);
+		} catch (Exception e) {
+			throw new MicroOssException(e);
+		}
+	}
+
+	@Override
+	public BulkLoadResult loadEntities(Iterator<Entity> entities) throws MicroOssException {
+		try (Connection conn = getWriteConnection()) {
+			return loadEntities(conn, entities);
+		} catch (Exception e) {
+			throw new MicroOssException(e);
+		}
+	}
+
+	@Override
+	public BulkLoadResult loadObjects(Iterator<?> objects) throws MicroOssException {
+		try (Connection conn = getWriteConnection()) {
+			return loadObjects(conn, objects);
+		} catch (Exception e) {
+			throw new MicroOssException(e);
+		}
+	}
+
+	@Override
+	public List<Object> executePipeline(PipelineCommand command) throws MicroOssException {
+		try (Connection conn = getWriteConnection()) {
+			return executePipeline(conn, command);
+		} catch (Exception e) {
+			throw new MicroOssException(e);
+		}
+	}
+
+	@Override
+	public void createBlobTable() throws MicroOssException {
+		try (Connection conn = getWriteConnection()) {
+			createBlobTable(conn);
+		} catch (Exception e) {
+			throw new MicroOssException(e);
+		}
+	}
+
+	@Override
+	public BlobOutputStream openBlobOutputStream(String blobId) throws MicroOssException {
+		Connection conn = null;
+		try {
+			conn = getWriteConnection();
+			return openBlobOutputStream(conn, blobId, true);
+		} catch (Exception e) {
+			if (conn != null) {
+				try {
+					conn.close();
+				} catch (SQLException sqlException) {
+					// ignore
+					log.warn("", sqlException);
+				}
+			}
+			throw new MicroOssException(e);
+		}
+	}
+
+	@Override
+	public BlobInputStream openBlobInputStream(String blobId) throws MicroOssException {
+		return openBlobInputStream(blobId, 0, -1);
+	}
+
+	@Override
+	public BlobInputStream openBlobInputStream(String blobId, long offset, long length) throws MicroOssException {
+		Connection conn = null;
+		try {
+			conn = getReadConnection();
+			return openBlobInputStream(conn, blobId, offset, length, true);
+		} catch (Exception e) {
+			if (conn != null) {
+				try {
+					conn.close();
+				} catch (SQLException sqlException) {
+					// ignore
+					log.warn("", sqlException);
+				}
+			}
+			throw new MicroOssException(e);
+		}
+	}
+
+	@Override
+	public long getBlobLength(String blobId) throws MicroOssException {
+		try (Connection conn = getReadConnection()) {
+			return getBlobLength(conn, blobId);
+		} catch (Exception e) {
+			throw new MicroOssException(e);
+		}
+	}
+
+	@Override
+	public int deleteBlob(String blobId) throws MicroOssException {
+		try (Connection conn = getWriteConnection()) {
+			return deleteBlob(conn, blobId);
+		} catch (Exception e) {
+			throw new MicroOssException(e);
+		}
+	}
+
 	@Override
 	public int updateObject(Class<?> clz, List<Field> fields, Condition where) throws MicroOssException {
-		try (Connection conn = dataSource.getConnection()) {
+		try (Connection conn = getWriteConnection()) {
 			return updateObject(conn, clz, fields, where);
 		} catch (Exception e) {
 			throw new MicroOssException(e);
@@ -114,7 +475,7 @@ public class MysqlMicroOssProvider extends RawMysqlMicroOssProvider implements M
 
 	@Override
 	public int deleteObject(Class<?> clz, Condition where) throws MicroOssException {
-		try (Connection conn = dataSource.getConnection()) {
+		try (Connection conn = getWriteConnection()) {
 			return deleteObject(conn, clz, where);
 		} catch (Exception e) {
 			throw new MicroOssException(e);
@@ -123,11 +484,7 @@ public class MysqlMicroOssProvider extends RawMysqlMicroOssProvider implements M
 
 	@Override
 	public int queryCount(Class<?> clz, Condition where) throws MicroOssException {
-		try (Connection conn = dataSource.getConnection()) {
-			return queryCount(conn, clz, where);
-		} catch (Exception e) {
-			throw new MicroOssException(e);
-		}
+		return queryCount(new SelectCountCommand(_getTableName(clz), where));
 	}
 
 	@Override
@@ -149,11 +506,10 @@ public class MysqlMicroOssProvider extends RawMysqlMicroOssProvider implements M
 	@Override
 	public <T> QueryResult<T> query(Class<T> clz, List<String> fieldNames, Condition where, List<Sort> sorts,
 			PagerRequest pager) throws MicroOssException {
-		try (Connection conn = dataSource.getConnection()) {
-			return query(conn, clz, fieldNames, where, sorts, pager);
-		} catch (Exception e) {
-			throw new MicroOssException(e);
-		}
+		QueryResult<T> queryResult = new QueryResult<>(
+				queryEntities(new SelectCommand(_getTableName(clz), _getFieldNames(clz, fieldNames, null), where, sorts,
+						pager)));
+		return queryResult.clz(clz);
 	}
 
 	@Override
@@ -161,4 +517,13 @@ public class MysqlMicroOssProvider extends RawMysqlMicroOssProvider implements M
 		execute(dataSource, transaction);
 	}
 
+	// holds one write connection until closed, use with try-with-resources
+	public UnitOfWork openUnitOfWork() throws MicroOssException {
+		try {
+			return new UnitOfWork(getWriteConnection(), dataSource, this);
+		} catch (SQLException e) {
+			throw new MicroOssException(e);
+		}
+	}
+
 }
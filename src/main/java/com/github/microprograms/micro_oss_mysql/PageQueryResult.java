@@ -0,0 +1,22 @@
+package com.github.microprograms.micro_oss_mysql;
+
+import com.github.microprograms.micro_oss_core.QueryResult;
+
+public class PageQueryResult<T> {
+	private QueryResult<T> queryResult;
+	private int total;
+
+	public PageQueryResult(QueryResult<T> queryResult, int total) {
+		this.queryResult = queryResult;
+		this.total = total;
+	}
+
+	public QueryResult<T> getQueryResult() {
+		return queryResult;
+	}
+
+	// rows matching the query without the pager, or the known total passed in
+	public int getTotal() {
+		return total;
+	}
+}
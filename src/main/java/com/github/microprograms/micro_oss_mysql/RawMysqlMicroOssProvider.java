@@ -1,9 +1,21 @@
 package com.github.microprograms.micro_oss_mysql;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.sql.DataSource;
 
@@ -25,66 +37,513 @@ import com.github.microprograms.micro_oss_core.model.dml.update.DeleteCommand;
 import com.github.microprograms.micro_oss_core.model.dml.update.InsertCommand;
 import com.github.microprograms.micro_oss_core.model.dml.update.UpdateCommand;
 import com.github.microprograms.micro_oss_core.utils.MicroOssUtils;
+import com.github.microprograms.micro_oss_mysql.cache.QueryResultCache;
+import com.github.microprograms.micro_oss_mysql.metrics.OperationEvent;
+import com.github.microprograms.micro_oss_mysql.metrics.OperationListener;
+import com.github.microprograms.micro_oss_mysql.metrics.OperationType;
+import com.github.microprograms.micro_oss_mysql.model.ddl.IndexDefinition;
+import com.github.microprograms.micro_oss_mysql.model.ddl.MysqlTableDefinition;
+import com.github.microprograms.micro_oss_mysql.model.dml.InsertBatchCommand;
+import com.github.microprograms.micro_oss_mysql.model.dml.KeysetPager;
+import com.github.microprograms.micro_oss_mysql.model.dml.PipelineCommand;
+import com.github.microprograms.micro_oss_mysql.model.dml.UpsertCommand;
+import com.github.microprograms.micro_oss_mysql.utils.KeysetTokens;
 import com.github.microprograms.micro_oss_mysql.utils.MysqlUtils;
+import com.github.microprograms.micro_oss_mysql.utils.PreparedStatementCache;
+import com.github.microprograms.micro_oss_mysql.utils.ResultSetHandler;
+import com.github.microprograms.micro_oss_mysql.utils.RowMapper;
+import com.github.microprograms.micro_oss_mysql.utils.SqlStatement;
+import com.github.microprograms.micro_oss_mysql.utils.TsvEntityInputStream;
 
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public abstract class RawMysqlMicroOssProvider {
 	private static final Logger log = LoggerFactory.getLogger(RawMysqlMicroOssProvider.class);
+	// largest value of the mediumblob data column
+	public static final int MAX_BLOB_CHUNK_SIZE = 16 * 1024 * 1024 - 1;
 
 	private MicroOssConfig config;
+	private boolean usePreparedStatement = true;
+	private PreparedStatementCache statementCache;
+	private QueryResultCache resultCache;
+	private QueryResultCache countCache;
+	private int batchInsertSize = 1000;
+	// 0: read @@max_allowed_packet from the server on first use
+	private volatile int maxAllowedPacket;
+	// Integer.MIN_VALUE streams row by row, a positive value needs useCursorFetch=true
+	private int streamingFetchSize = Integer.MIN_VALUE;
+	private volatile OperationListener operationListener;
+	private TransactionPropagation transactionPropagation = TransactionPropagation.nested;
+	private RetryPolicy retryPolicy;
+	private boolean useWindowCount;
+	private boolean useMultiQueries;
+	private boolean useClassProjection;
+	private String blobTableName = "blob_chunk";
+	private int blobChunkSize = 256 * 1024;
 
 	public RawMysqlMicroOssProvider(MicroOssConfig config) {
 		this.config = config;
 	}
 
+	protected RawMysqlMicroOssProvider(RawMysqlMicroOssProvider parent) {
+		this.config = parent.config;
+		this.usePreparedStatement = parent.usePreparedStatement;
+		this.statementCache = parent.statementCache;
+		this.resultCache = parent.resultCache;
+		this.countCache = parent.countCache;
+		this.batchInsertSize = parent.batchInsertSize;
+		this.maxAllowedPacket = parent.maxAllowedPacket;
+		this.streamingFetchSize = parent.streamingFetchSize;
+		this.operationListener = parent.operationListener;
+		this.transactionPropagation = parent.transactionPropagation;
+		this.retryPolicy = parent.retryPolicy;
+		this.useWindowCount = parent.useWindowCount;
+		this.useMultiQueries = parent.useMultiQueries;
+		this.useClassProjection = parent.useClassProjection;
+		this.blobTableName = parent.blobTableName;
+		this.blobChunkSize = parent.blobChunkSize;
+	}
+
 	public MicroOssConfig getConfig() {
 		return config;
 	}
 
-	private String _getTableName(Class<?> clz) {
+	public boolean isUsePreparedStatement() {
+		return usePreparedStatement;
+	}
+
+	public void setUsePreparedStatement(boolean usePreparedStatement) {
+		this.usePreparedStatement = usePreparedStatement;
+	}
+
+	public int getStatementCacheSize() {
+		return statementCache == null ? 0 : statementCache.getMaxSize();
+	}
+
+	// statements kept per physical connection, 0 to turn off; see PreparedStatementCache for the driver settings
+	public void setStatementCacheSize(int statementCacheSize) {
+		if (statementCache != null) {
+			statementCache.clear();
+		}
+		this.statementCache = statementCacheSize > 0 ? new PreparedStatementCache(statementCacheSize) : null;
+	}
+
+	public QueryResultCache getResultCache() {
+		return resultCache;
+	}
+
+	// caches query/queryCount results of the pooled provider, null to disable
+	public void setResultCache(QueryResultCache resultCache) {
+		this.resultCache = resultCache;
+	}
+
+	public QueryResultCache getCountCache() {
+		return countCache;
+	}
+
+	// keeps the counts of CountMode.cached, null makes them exact
+	public void setCountCache(QueryResultCache countCache) {
+		this.countCache = countCache;
+	}
+
+	public boolean isUseClassProjection() {
+		return useClassProjection;
+	}
+
+	// query(Class<T>, ...) without field names selects the columns of T's non-transient fields instead of *;
+	// off by default, as a field that is not a column would fail the query
+	public void setUseClassProjection(boolean useClassProjection) {
+		this.useClassProjection = useClassProjection;
+	}
+
+	public String getBlobTableName() {
+		return blobTableName;
+	}
+
+	// without the table prefix
+	public void setBlobTableName(String blobTableName) {
+		this.blobTableName = blobTableName;
+	}
+
+	public int getBlobChunkSize() {
+		return blobChunkSize;
+	}
+
+	// bytes per chunk row, 1 to MAX_BLOB_CHUNK_SIZE; capped at half of max_allowed_packet as escaping may double them
+	public void setBlobChunkSize(int blobChunkSize) {
+		if (blobChunkSize < 1 || blobChunkSize > MAX_BLOB_CHUNK_SIZE) {
+			throw new RuntimeException("Blob chunk size must be between 1 and " + MAX_BLOB_CHUNK_SIZE);
+		}
+		this.blobChunkSize = blobChunkSize;
+	}
+
+	public int getBatchInsertSize() {
+		return batchInsertSize;
+	}
+
+	public void setBatchInsertSize(int batchInsertSize) {
+		this.batchInsertSize = batchInsertSize;
+	}
+
+	public int getMaxAllowedPacket() {
+		return maxAllowedPacket;
+	}
+
+	public void setMaxAllowedPacket(int maxAllowedPacket) {
+		this.maxAllowedPacket = maxAllowedPacket;
+	}
+
+	public int getStreamingFetchSize() {
+		return streamingFetchSize;
+	}
+
+	public void setStreamingFetchSize(int streamingFetchSize) {
+		this.streamingFetchSize = streamingFetchSize;
+	}
+
+	public OperationListener getOperationListener() {
+		return operationListener;
+	}
+
+	// null to disable, combine several with CompositeOperationListener
+	public void setOperationListener(OperationListener operationListener) {
+		this.operationListener = operationListener;
+	}
+
+	public TransactionPropagation getTransactionPropagation() {
+		return transactionPropagation;
+	}
+
+	// applies to execute(Transaction) called from inside a transaction
+	public void setTransactionPropagation(TransactionPropagation transactionPropagation) {
+		this.transactionPropagation = transactionPropagation;
+	}
+
+	public RetryPolicy getRetryPolicy() {
+		return retryPolicy;
+	}
+
+	// replays failed transactions started from a DataSource, null to disable
+	public void setRetryPolicy(RetryPolicy retryPolicy) {
+		this.retryPolicy = retryPolicy;
+	}
+
+	public boolean isUseWindowCount() {
+		return useWindowCount;
+	}
+
+	// queryPage counts with COUNT(*) OVER() in the page query, needs MySQL 8
+	public void setUseWindowCount(boolean useWindowCount) {
+		this.useWindowCount = useWindowCount;
+	}
+
+	public boolean isUseMultiQueries() {
+		return useMultiQueries;
+	}
+
+	// queryPage sends COUNT(*) and the page query in one round trip, needs allowMultiQueries=true on the connection
+	public void setUseMultiQueries(boolean useMultiQueries) {
+		this.useMultiQueries = useMultiQueries;
+	}
+
+	protected String _getTableName(Class<?> clz) {
 		return MicroOssUtils.getTableName(clz);
 	}
 
-	private String _getTableNameWithPrefix(String tableName) {
+	// sorts: Sort fields the caller reads from the rows, added to a derived projection when missing
+	protected List<String> _getFieldNames(Class<?> clz, List<String> fieldNames, List<Sort> sorts) {
+		if ((fieldNames != null && !fieldNames.isEmpty()) || !useClassProjection) {
+			return fieldNames;
+		}
+		List<String> columnNames = RowMapper.getColumnNames(clz);
+		if (columnNames.isEmpty()) {
+			return null;
+		}
+		if (sorts == null || sorts.isEmpty()) {
+			return columnNames;
+		}
+		List<String> projection = new ArrayList<>(columnNames);
+		for (Sort sort : sorts) {
+			String label = MysqlUtils.getColumnLabel(sort.getFieldName());
+			boolean selected = false;
+			for (String x : projection) {
+				selected |= label.equalsIgnoreCase(MysqlUtils.getColumnLabel(x));
+			}
+			if (!selected) {
+				projection.add(sort.getFieldName());
+			}
+		}
+		return projection;
+	}
+
+	protected String _getTableNameWithPrefix(String tableName) {
 		return MicroOssUtils.getTableNameWithPrefix(tableName, config.getTablePrefix());
 	}
 
-	private Entity _buildEntity(Object javaObject) {
+	protected Entity _buildEntity(Object javaObject) {
 		return MicroOssUtils.buildEntity(javaObject);
 	}
 
 	public void createTable(Connection conn, CreateTableCommand command) throws Exception {
-		command.getTableDefinition().setTableName(_getTableNameWithPrefix(command.getTableDefinition().getTableName()));
-		String sql = MysqlUtils.buildSql(command);
-		log.debug("createTable> {}", sql);
-		conn.createStatement().executeUpdate(sql);
+		createTable(conn, command, null);
+	}
+
+	// mysqlDefinition: varchar lengths and secondary indexes, or null
+	public void createTable(Connection conn, CreateTableCommand command, MysqlTableDefinition mysqlDefinition)
+			throws Exception {
+		String tableName = command.getTableDefinition().getTableName();
+		command.getTableDefinition().setTableName(_getTableNameWithPrefix(tableName));
+		_executeUpdate(conn, OperationType.createTable, command.getTableDefinition().getTableName(),
+				new SqlStatement(MysqlUtils.buildSql(command, mysqlDefinition)));
+		_invalidate(tableName);
+	}
+
+	// adds the indexes whose names the table doesn't have yet, in one ALTER TABLE, and returns their names
+	public List<String> ensureIndexes(Connection conn, String tableName, List<IndexDefinition> indexes)
+			throws Exception {
+		String tableNameWithPrefix = _getTableNameWithPrefix(tableName);
+		SqlStatement statement = _buildInformationSchemaStatement(
+				"SELECT INDEX_NAME FROM information_schema.STATISTICS", tableNameWithPrefix);
+		Set<String> existingNames = _executeQuery(conn, OperationType.other, tableNameWithPrefix, statement, rs -> {
+			Set<String> names = new HashSet<>();
+			while (rs.next()) {
+				// index names are case-insensitive
+				names.add(rs.getString(1).toLowerCase());
+			}
+			return names;
+		});
+		List<IndexDefinition> missing = new ArrayList<>();
+		List<String> missingNames = new ArrayList<>();
+		for (IndexDefinition index : indexes) {
+			if (existingNames.add(index.getName().toLowerCase())) {
+				missing.add(index);
+				missingNames.add(index.getName());
+			}
+		}
+		if (!missing.isEmpty()) {
+			_executeUpdate(conn, OperationType.alterTable, tableNameWithPrefix,
+					new SqlStatement(MysqlUtils.buildAddIndexesSql(tableNameWithPrefix, missing)));
+		}
+		return missingNames;
+	}
+
+	public List<String> ensureIndexes(Connection conn, Class<?> clz, List<IndexDefinition> indexes)
+			throws Exception {
+		return ensureIndexes(conn, _getTableName(clz), indexes);
 	}
 
 	public void dropTable(Connection conn, DropTableCommand command) throws Exception {
-		command.setTableName(_getTableNameWithPrefix(command.getTableName()));
-		String sql = MysqlUtils.buildSql(command);
-		log.debug("dropTable> {}", sql);
-		conn.createStatement().executeUpdate(sql);
+		String tableName = command.getTableName();
+		command.setTableName(_getTableNameWithPrefix(tableName));
+		_executeUpdate(conn, OperationType.dropTable, command.getTableName(),
+				new SqlStatement(MysqlUtils.buildSql(command)));
+		_invalidate(tableName);
 	}
 
 	public int insertObject(Connection conn, InsertCommand command) throws Exception {
-		command.getEntity().setTableName(_getTableNameWithPrefix(command.getEntity().getTableName()));
-		String sql = MysqlUtils.buildSql(command);
-		log.debug("executeUpdate> {}", sql);
-		return conn.createStatement().executeUpdate(sql);
+		String tableName = command.getEntity().getTableName();
+		command.getEntity().setTableName(_getTableNameWithPrefix(tableName));
+		try {
+			return _executeUpdate(conn, OperationType.insert, command.getEntity().getTableName(),
+					MysqlUtils.buildStatement(command, usePreparedStatement));
+		} finally {
+			_invalidate(tableName);
+		}
 	}
 
 	public int insertObject(Connection conn, Object object) throws Exception {
 		return insertObject(conn, new InsertCommand(_buildEntity(object)));
 	}
 
-	public int updateObject(Connection conn, UpdateCommand command) throws Exception {
-		command.setTableName(_getTableNameWithPrefix(command.getTableName()));
-		String sql = MysqlUtils.buildSql(command);
+	public int[] insertObjects(Connection conn, InsertBatchCommand command) throws Exception {
+		Set<String> tableNames = new HashSet<>();
+		for (Entity entity : command.getEntities()) {
+			tableNames.add(entity.getTableName());
+			entity.setTableName(_getTableNameWithPrefix(entity.getTableName()));
+		}
+		int maxRowsPerChunk = command.getMaxRowsPerChunk() > 0 ? command.getMaxRowsPerChunk() : batchInsertSize;
+		List<SqlStatement> statements = MysqlUtils.buildStatements(command, maxRowsPerChunk,
+				_getMaxPacketBytes(conn), usePreparedStatement);
+		String tableNameWithPrefix = command.getEntities().isEmpty() ? null
+				: command.getEntities().get(0).getTableName();
+		int[] counts = new int[statements.size()];
+		try {
+			for (int i = 0; i < statements.size(); i++) {
+				counts[i] = _executeUpdate(conn, OperationType.insert, tableNameWithPrefix, statements.get(i));
+			}
+		} finally {
+			for (String tableName : tableNames) {
+				_invalidate(tableName);
+			}
+		}
+		return counts;
+	}
+
+	public int[] insertObjects(Connection conn, Collection<?> objects) throws Exception {
+		int[] counts = new int[0];
+		for (List<Entity> entities : _groupEntitiesByShape(objects)) {
+			counts = ArrayUtils.addAll(counts, insertObjects(conn, new InsertBatchCommand(entities)));
+		}
+		return counts;
+	}
+
+	public int[] upsertObjects(Connection conn, UpsertCommand command) throws Exception {
+		Set<String> tableNames = new HashSet<>();
+		for (Entity entity : command.getEntities()) {
+			tableNames.add(entity.getTableName());
+			entity.setTableName(_getTableNameWithPrefix(entity.getTableName()));
+		}
+		int maxRowsPerChunk = command.getMaxRowsPerChunk() > 0 ? command.getMaxRowsPerChunk() : batchInsertSize;
+		List<SqlStatement> statements = MysqlUtils.buildStatements(command, maxRowsPerChunk,
+				_getMaxPacketBytes(conn), usePreparedStatement);
+		String tableNameWithPrefix = command.getEntities().isEmpty() ? null
+				: command.getEntities().get(0).getTableName();
+		int[] counts = new int[statements.size()];
+		try {
+			for (int i = 0; i < statements.size(); i++) {
+				counts[i] = _executeUpdate(conn, OperationType.upsert, tableNameWithPrefix, statements.get(i));
+			}
+		} finally {
+			for (String tableName : tableNames) {
+				_invalidate(tableName);
+			}
+		}
+		return counts;
+	}
+
+	public int[] upsertObjects(Connection conn, Collection<?> objects, List<String> primaryKeyFieldNames,
+			List<String> updateFieldNames) throws Exception {
+		int[] counts = new int[0];
+		for (List<Entity> entities : _groupEntitiesByShape(objects)) {
+			counts = ArrayUtils.addAll(counts,
+					upsertObjects(conn, new UpsertCommand(entities, primaryKeyFieldNames, updateFieldNames)));
+		}
+		return counts;
+	}
+
+	/**
+	 * Streams the entities into their table with LOAD DATA LOCAL INFILE, without
+	 * temp files. The connection must allow it (allowLoadLocalInfile=true) and so
+	 * must the server (local_infile=ON). All entities must belong to one table
+	 * and have the same fields in the same order.
+	 */
+	public BulkLoadResult loadEntities(Connection conn, Iterator<Entity> entities) throws Exception {
+		if (!entities.hasNext()) {
+			return new BulkLoadResult(0, 0);
+		}
+		Entity first = entities.next();
+		String tableName = first.getTableName();
+		String tableNameWithPrefix = _getTableNameWithPrefix(tableName);
+		List<String> fieldNames = new ArrayList<>();
+		for (Field x : first.getFields()) {
+			fieldNames.add(x.getName());
+		}
+		String sql = MysqlUtils.buildLoadDataSql(tableNameWithPrefix, fieldNames);
 		log.debug("executeUpdate> {}", sql);
-		return conn.createStatement().executeUpdate(sql);
+		OperationListener listener = operationListener;
+		long start = listener == null ? 0 : System.nanoTime();
+		int rows = -1;
+		Throwable error = null;
+		try (Statement stmt = conn.createStatement()) {
+			TsvEntityInputStream in = new TsvEntityInputStream(first, entities);
+			stmt.unwrap(com.mysql.jdbc.Statement.class).setLocalInfileInputStream(in);
+			rows = stmt.executeUpdate(sql);
+			log.debug("loaded {} of {} rows", rows, in.getRowCount());
+		} catch (Throwable e) {
+			error = e;
+			throw e;
+		} finally {
+			if (listener != null) {
+				_fireOperation(listener, new OperationEvent(OperationType.bulkLoad, tableNameWithPrefix, sql,
+						Collections.emptyList(), System.nanoTime() - start, rows, error));
+			}
+			_invalidate(tableName);
+		}
+		int warnings = _executeQuery(conn, new SqlStatement("SELECT @@warning_count;"), rs -> {
+			rs.next();
+			return rs.getInt(1);
+		});
+		return new BulkLoadResult(rows, warnings);
+	}
+
+	public BulkLoadResult loadObjects(Connection conn, Iterator<?> objects) throws Exception {
+		return loadEntities(conn, new Iterator<Entity>() {
+			@Override
+			public boolean hasNext() {
+				return objects.hasNext();
+			}
+
+			@Override
+			public Entity next() {
+				return _buildEntity(objects.next());
+			}
+		});
+	}
+
+	private Collection<List<Entity>> _groupEntitiesByShape(Collection<?> objects) {
+		Map<String, List<Entity>> entitiesByShape = new LinkedHashMap<>();
+		for (Object object : objects) {
+			Entity entity = _buildEntity(object);
+			StringBuilder shape = new StringBuilder(entity.getTableName());
+			for (Field field : entity.getFields()) {
+				shape.append(",").append(field.getName());
+			}
+			entitiesByShape.computeIfAbsent(shape.toString(), x -> new ArrayList<>()).add(entity);
+		}
+		return entitiesByShape.values();
+	}
+
+	// tableName is the name before the table prefix is applied
+	protected void _invalidate(String tableName) {
+		if (resultCache != null) {
+			resultCache.invalidate(tableName);
+		}
+		if (countCache != null) {
+			countCache.invalidate(tableName);
+		}
+	}
+
+	protected void _applyTableNamePrefix(SelectCountCommand command) {
+		command.setTableName(_getTableNameWithPrefix(command.getTableName()));
+		if (command.getJoins() != null) {
+			for (Join x : command.getJoins()) {
+				x.setTableName(_getTableNameWithPrefix(x.getTableName()));
+			}
+		}
+	}
+
+	protected void _applyTableNamePrefix(SelectCommand command) {
+		command.setTableName(_getTableNameWithPrefix(command.getTableName()));
+		if (command.getJoins() != null) {
+			for (Join x : command.getJoins()) {
+				x.setTableName(_getTableNameWithPrefix(x.getTableName()));
+			}
+		}
+	}
+
+	private int _getMaxPacketBytes(Connection conn) throws SQLException {
+		if (maxAllowedPacket <= 0) {
+			maxAllowedPacket = _executeQuery(conn, new SqlStatement("SELECT @@max_allowed_packet;"), rs -> {
+				rs.next();
+				return rs.getInt(1);
+			});
+		}
+		// leave room for the packet header and protocol overhead
+		return Math.max(1024, maxAllowedPacket - 1024);
+	}
+
+	public int updateObject(Connection conn, UpdateCommand command) throws Exception {
+		String tableName = command.getTableName();
+		command.setTableName(_getTableNameWithPrefix(tableName));
+		try {
+			return _executeUpdate(conn, OperationType.update, command.getTableName(),
+					MysqlUtils.buildStatement(command, usePreparedStatement));
+		} finally {
+			_invalidate(tableName);
+		}
 	}
 
 	public int updateObject(Connection conn, Class<?> clz, List<Field> fields, Condition where) throws Exception {
@@ -92,10 +551,14 @@ public abstract class RawMysqlMicroOssProvider {
 	}
 
 	public int deleteObject(Connection conn, DeleteCommand command) throws Exception {
-		command.setTableName(_getTableNameWithPrefix(command.getTableName()));
-		String sql = MysqlUtils.buildSql(command);
-		log.debug("executeUpdate> {}", sql);
-		return conn.createStatement().executeUpdate(sql);
+		String tableName = command.getTableName();
+		command.setTableName(_getTableNameWithPrefix(tableName));
+		try {
+			return _executeUpdate(conn, OperationType.delete, command.getTableName(),
+					MysqlUtils.buildStatement(command, usePreparedStatement));
+		} finally {
+			_invalidate(tableName);
+		}
 	}
 
 	public int deleteObject(Connection conn, Class<?> clz, Condition where) throws Exception {
@@ -103,17 +566,101 @@ public abstract class RawMysqlMicroOssProvider {
 	}
 
 	public int queryCount(Connection conn, SelectCountCommand command) throws Exception {
-		command.setTableName(_getTableNameWithPrefix(command.getTableName()));
-		if (command.getJoins() != null) {
-			for (Join x : command.getJoins()) {
-				x.setTableName(_getTableNameWithPrefix(x.getTableName()));
+		_applyTableNamePrefix(command);
+		return _queryExactCount(conn, command);
+	}
+
+	public int queryCount(Connection conn, SelectCountCommand command, CountMode mode) throws Exception {
+		if (mode == CountMode.estimated) {
+			_applyTableNamePrefix(command);
+			return _queryEstimatedCount(conn, command);
+		}
+		if (mode == CountMode.exact || countCache == null) {
+			return queryCount(conn, command);
+		}
+		return _queryCachedCount(command, () -> queryCount(conn, command));
+	}
+
+	protected interface CountCall {
+		int call() throws Exception;
+	}
+
+	// serves CountMode.cached from countCache, which must be set, running call on a miss
+	protected int _queryCachedCount(SelectCountCommand command, CountCall call) throws Exception {
+		QueryResultCache cache = countCache;
+		String key = MysqlUtils.buildSql(command);
+		Object cached = cache.get(key);
+		if (cached != null) {
+			return (Integer) cached;
+		}
+		List<String> tableNames = MysqlUtils.getTableNames(command);
+		long version = cache.getVersion();
+		int count = call.call();
+		cache.put(key, tableNames, count, version);
+		return count;
+	}
+
+	public int queryCount(Connection conn, Class<?> clz, Condition where, CountMode mode) throws Exception {
+		return queryCount(conn, new SelectCountCommand(_getTableName(clz), where), mode);
+	}
+
+	// the command already has the table prefix applied
+	private int _queryEstimatedCount(Connection conn, SelectCountCommand command) throws Exception {
+		String tableName = command.getTableName();
+		if ((command.getJoins() == null || command.getJoins().isEmpty())
+				&& StringUtils.isBlank(MysqlUtils.parseCondition(command.getWhere()))) {
+			SqlStatement statement = _buildInformationSchemaStatement(
+					"SELECT TABLE_ROWS FROM information_schema.TABLES", tableName);
+			Long rows = _executeQuery(conn, OperationType.queryCount, tableName, statement,
+					rs -> rs.next() ? rs.getObject(1, Long.class) : null);
+			if (rows != null) {
+				return (int) Math.min(Integer.MAX_VALUE, rows);
+			}
+			// views have no estimate
+			return _queryExactCount(conn, command);
+		}
+		SqlStatement countStatement = MysqlUtils.buildStatement(command, usePreparedStatement);
+		SqlStatement statement = new SqlStatement("EXPLAIN " + countStatement.getSql(),
+				countStatement.isPrepared() ? countStatement.getParams() : null);
+		Double estimate = _executeQuery(conn, OperationType.queryCount, tableName, statement, rs -> {
+			boolean hasFiltered = ArrayUtils.contains(MysqlUtils.getColumnLabels(rs.getMetaData()), "filtered");
+			double product = 1;
+			boolean found = false;
+			// rows examined per table multiply in a nested-loop join
+			while (rs.next()) {
+				Number rows = (Number) rs.getObject("rows");
+				if (rows == null) {
+					continue;
+				}
+				Number filtered = hasFiltered ? (Number) rs.getObject("filtered") : null;
+				product *= rows.doubleValue() * (filtered == null ? 100 : filtered.doubleValue()) / 100;
+				found = true;
 			}
+			return found ? product : null;
+		});
+		if (estimate == null) {
+			return _queryExactCount(conn, command);
 		}
-		String sql = MysqlUtils.buildSql(command);
-		log.debug("executeQuery> {}", sql);
-		ResultSet rs = conn.createStatement().executeQuery(sql);
-		rs.next();
-		return rs.getObject("count", Integer.class);
+		return (int) Math.min(Integer.MAX_VALUE, Math.round(estimate));
+	}
+
+	// select ... WHERE TABLE_SCHEMA=... AND TABLE_NAME=... for a table name that may be schema-qualified
+	private SqlStatement _buildInformationSchemaStatement(String select, String tableName) {
+		String[] names = StringUtils.remove(tableName, '`').split("\\.", 2);
+		if (names.length == 2) {
+			return new SqlStatement(select + " WHERE TABLE_SCHEMA=? AND TABLE_NAME=?;",
+					new ArrayList<>(Arrays.asList(names[0], names[1])));
+		}
+		return new SqlStatement(select + " WHERE TABLE_SCHEMA=DATABASE() AND TABLE_NAME=?;",
+				new ArrayList<>(Arrays.asList(names[0])));
+	}
+
+	private int _queryExactCount(Connection conn, SelectCountCommand command) throws SQLException {
+		SqlStatement statement = MysqlUtils.buildStatement(command, usePreparedStatement);
+		return _executeQuery(conn, OperationType.queryCount, command.getTableName(), statement, rs -> {
+			rs.next();
+			return rs.getObject("count", Integer.class);
+		});
 	}
 
 	public int queryCount(Connection conn, Class<?> clz, Condition where) throws Exception {
@@ -121,36 +668,729 @@ public abstract class RawMysqlMicroOssProvider {
 	}
 
 	public <T> QueryResult<T> query(Connection conn, SelectCommand command) throws Exception {
-		command.setTableName(_getTableNameWithPrefix(command.getTableName()));
-		if (command.getJoins() != null) {
-			for (Join x : command.getJoins()) {
-				x.setTableName(_getTableNameWithPrefix(x.getTableName()));
+		return new QueryResult<>(queryEntities(conn, command));
+	}
+
+	public List<Entity> queryEntities(Connection conn, SelectCommand command) throws Exception {
+		_applyTableNamePrefix(command);
+		String tableName = command.getTableName();
+		return _executeQuery(conn, OperationType.query, tableName,
+				MysqlUtils.buildStatement(command, usePreparedStatement), rs -> MysqlUtils.getEntityList(tableName, rs));
+	}
+
+	public CompactQueryResult queryCompact(Connection conn, SelectCommand command) throws Exception {
+		_applyTableNamePrefix(command);
+		String tableName = command.getTableName();
+		return _executeQuery(conn, OperationType.query, tableName,
+				MysqlUtils.buildStatement(command, usePreparedStatement),
+				rs -> MysqlUtils.getCompactQueryResult(tableName, rs));
+	}
+
+	public EntityCursor openCursor(Connection conn, SelectCommand command, boolean closeConnection)
+			throws Exception {
+		_applyTableNamePrefix(command);
+		SqlStatement statement = MysqlUtils.buildStatement(command, usePreparedStatement);
+		log.debug("executeQuery> {}", statement);
+		OperationListener listener = operationListener;
+		long start = listener == null ? 0 : System.nanoTime();
+		Statement stmt = null;
+		try {
+			ResultSet rs;
+			if (statement.isPrepared()) {
+				PreparedStatement ps = conn.prepareStatement(statement.getSql(), ResultSet.TYPE_FORWARD_ONLY,
+						ResultSet.CONCUR_READ_ONLY);
+				stmt = ps;
+				_bindParameters(ps, statement.getParams());
+				ps.setFetchSize(streamingFetchSize);
+				rs = ps.executeQuery();
+			} else {
+				stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+				stmt.setFetchSize(streamingFetchSize);
+				rs = stmt.executeQuery(statement.getSql());
+			}
+			if (listener != null) {
+				_fireOperation(listener, new OperationEvent(OperationType.cursor, command.getTableName(),
+						statement.getSql(), statement.getParams(), System.nanoTime() - start, -1, null));
+			}
+			return new EntityCursor(command.getTableName(), stmt, rs, closeConnection ? conn : null);
+		} catch (Exception e) {
+			if (stmt != null) {
+				stmt.close();
+			}
+			if (listener != null) {
+				_fireOperation(listener, new OperationEvent(OperationType.cursor, command.getTableName(),
+						statement.getSql(), statement.getParams(), System.nanoTime() - start, -1, e));
+			}
+			throw e;
+		}
+	}
+
+	public int query(Connection conn, SelectCommand command, EntityCallback callback) throws Exception {
+		int count = 0;
+		try (EntityCursor cursor = openCursor(conn, command, false)) {
+			while (cursor.hasNext()) {
+				callback.accept(cursor.next());
+				count++;
+			}
+		}
+		return count;
+	}
+
+	public void createBlobTable(Connection conn) throws Exception {
+		String tableName = _getTableNameWithPrefix(blobTableName);
+		_executeUpdate(conn, OperationType.createTable, tableName,
+				new SqlStatement(MysqlUtils.buildCreateBlobTableSql(tableName)));
+	}
+
+	// replaces the object blobId on commit(); closeConnection: run in an own transaction, release the connection on close
+	public BlobOutputStream openBlobOutputStream(Connection conn, String blobId, boolean closeConnection)
+			throws Exception {
+		int chunkSize = Math.max(1, Math.min(blobChunkSize, _getMaxPacketBytes(conn) / 2));
+		Savepoint savepoint = null;
+		if (closeConnection) {
+			conn.setAutoCommit(false);
+		} else {
+			savepoint = conn.setSavepoint();
+		}
+		try {
+			deleteBlob(conn, blobId);
+		} catch (Exception e) {
+			if (closeConnection) {
+				conn.rollback();
+				conn.setAutoCommit(true);
+			} else {
+				conn.rollback(savepoint);
 			}
+			throw e;
 		}
-		String sql = MysqlUtils.buildSql(command);
-		log.debug("executeQuery> {}", sql);
-		List<Entity> entities = MysqlUtils.getEntityList(command.getTableName(),
-				conn.createStatement().executeQuery(sql));
-		return new QueryResult<>(entities);
+		return new BlobOutputStream(this, conn, blobId, chunkSize, closeConnection, savepoint);
+	}
+
+	// length: -1 up to the end of the object; a missing object reads as empty
+	public BlobInputStream openBlobInputStream(Connection conn, String blobId, long offset, long length,
+			boolean closeConnection) throws Exception {
+		if (closeConnection) {
+			conn.setAutoCommit(false);
+		}
+		return new BlobInputStream(this, conn, blobId, offset, length, closeConnection);
+	}
+
+	// -1 when there is no such object
+	public long getBlobLength(Connection conn, String blobId) throws Exception {
+		String tableName = _getTableNameWithPrefix(blobTableName);
+		List<Object> params = new ArrayList<>();
+		params.add(blobId);
+		return _executeQuery(conn, OperationType.query, tableName,
+				new SqlStatement(MysqlUtils.buildSelectBlobLengthSql(tableName), params),
+				rs -> rs.next() ? rs.getLong(1) : -1L);
+	}
+
+	// returns the number of chunks deleted
+	public int deleteBlob(Connection conn, String blobId) throws Exception {
+		String tableName = _getTableNameWithPrefix(blobTableName);
+		List<Object> params = new ArrayList<>();
+		params.add(blobId);
+		return _executeUpdate(conn, OperationType.delete, tableName,
+				new SqlStatement(MysqlUtils.buildDeleteBlobSql(tableName), params));
+	}
+
+	void _writeBlobChunk(Connection conn, String blobId, long position, byte[] data) throws SQLException {
+		String tableName = _getTableNameWithPrefix(blobTableName);
+		List<Object> params = new ArrayList<>(3);
+		params.add(blobId);
+		params.add(position);
+		params.add(data);
+		_executeUpdate(conn, OperationType.insert, tableName,
+				new SqlStatement(MysqlUtils.buildInsertBlobChunkSql(tableName), params));
+	}
+
+	BlobInputStream.Chunk _readBlobChunk(Connection conn, String blobId, long position) throws SQLException {
+		String tableName = _getTableNameWithPrefix(blobTableName);
+		List<Object> params = new ArrayList<>(2);
+		params.add(blobId);
+		params.add(position);
+		return _executeQuery(conn, OperationType.query, tableName,
+				new SqlStatement(MysqlUtils.buildSelectBlobChunkSql(tableName), params),
+				rs -> rs.next() ? new BlobInputStream.Chunk(rs.getLong(1), rs.getBytes(2)) : null);
+	}
+
+	public List<Object> executePipeline(Connection conn, PipelineCommand command) throws Exception {
+		List<Object> commands = command.getCommands();
+		List<SqlStatement> statements = new ArrayList<>(commands.size());
+		List<String> tableNames = new ArrayList<>(commands.size());
+		Set<String> writtenTables = new HashSet<>();
+		// a JDBC batch of different statements cannot bind parameters
+		boolean bindWrites = usePreparedStatement && command.isMultiQueries();
+		for (Object x : commands) {
+			if (x instanceof SelectCommand) {
+				SelectCommand select = (SelectCommand) x;
+				_applyTableNamePrefix(select);
+				tableNames.add(select.getTableName());
+				statements.add(MysqlUtils.buildStatement(select, usePreparedStatement));
+			} else if (x instanceof SelectCountCommand) {
+				SelectCountCommand selectCount = (SelectCountCommand) x;
+				_applyTableNamePrefix(selectCount);
+				tableNames.add(selectCount.getTableName());
+				statements.add(MysqlUtils.buildStatement(selectCount, usePreparedStatement));
+			} else if (x instanceof InsertCommand) {
+				Entity entity = ((InsertCommand) x).getEntity();
+				writtenTables.add(entity.getTableName());
+				entity.setTableName(_getTableNameWithPrefix(entity.getTableName()));
+				tableNames.add(entity.getTableName());
+				statements.add(MysqlUtils.buildStatement((InsertCommand) x, bindWrites));
+			} else if (x instanceof UpdateCommand) {
+				UpdateCommand update = (UpdateCommand) x;
+				writtenTables.add(update.getTableName());
+				update.setTableName(_getTableNameWithPrefix(update.getTableName()));
+				tableNames.add(update.getTableName());
+				statements.add(MysqlUtils.buildStatement(update, bindWrites));
+			} else if (x instanceof DeleteCommand) {
+				DeleteCommand delete = (DeleteCommand) x;
+				writtenTables.add(delete.getTableName());
+				delete.setTableName(_getTableNameWithPrefix(delete.getTableName()));
+				tableNames.add(delete.getTableName());
+				statements.add(MysqlUtils.buildStatement(delete, bindWrites));
+			} else {
+				throw new RuntimeException("Unsupported pipeline command " + x.getClass().getName());
+			}
+		}
+		try {
+			return command.isMultiQueries() ? _executeMultiQueries(conn, commands, statements, tableNames)
+					: _executeBatches(conn, commands, statements, tableNames);
+		} finally {
+			for (String tableName : writtenTables) {
+				_invalidate(tableName);
+			}
+		}
+	}
+
+	private List<Object> _executeMultiQueries(Connection conn, List<Object> commands, List<SqlStatement> statements,
+			List<String> tableNames) throws SQLException {
+		StringBuilder sb = new StringBuilder();
+		List<Object> params = new ArrayList<>();
+		for (SqlStatement x : statements) {
+			sb.append(x.getSql());
+			params.addAll(x.getParams());
+		}
+		SqlStatement statement = new SqlStatement(sb.toString(), usePreparedStatement ? params : null);
+		log.debug("executePipeline> {}", statement);
+		OperationListener listener = operationListener;
+		long start = listener == null ? 0 : System.nanoTime();
+		Throwable error = null;
+		List<Object> results = new ArrayList<>(commands.size());
+		try (Statement stmt = statement.isPrepared() ? conn.prepareStatement(statement.getSql())
+				: conn.createStatement()) {
+			boolean isResultSet;
+			if (statement.isPrepared()) {
+				_bindParameters((PreparedStatement) stmt, params);
+				isResultSet = ((PreparedStatement) stmt).execute();
+			} else {
+				isResultSet = stmt.execute(statement.getSql());
+			}
+			for (int i = 0; i < commands.size(); i++) {
+				Object x = commands.get(i);
+				if (x instanceof SelectCommand || x instanceof SelectCountCommand) {
+					if (!isResultSet) {
+						throw new SQLException(String.format("Pipeline statement %s returned no result set", i + 1));
+					}
+					try (ResultSet rs = stmt.getResultSet()) {
+						if (x instanceof SelectCommand) {
+							results.add(new QueryResult<>(MysqlUtils.getEntityList(tableNames.get(i), rs)));
+						} else {
+							rs.next();
+							results.add(rs.getObject("count", Integer.class));
+						}
+					}
+				} else {
+					int count = stmt.getUpdateCount();
+					if (isResultSet || count == -1) {
+						throw new SQLException(String.format("Pipeline statement %s returned no update count", i + 1));
+					}
+					results.add(count);
+				}
+				isResultSet = stmt.getMoreResults();
+			}
+			return results;
+		} catch (Throwable e) {
+			error = e;
+			throw e;
+		} finally {
+			if (listener != null) {
+				_fireOperation(listener, new OperationEvent(OperationType.pipeline, null, statement.getSql(),
+						statement.getParams(), System.nanoTime() - start, error == null ? commands.size() : -1, error));
+			}
+		}
+	}
+
+	// with rewriteBatchedStatements=true Connector/J sends each batch of writes in one round trip
+	private List<Object> _executeBatches(Connection conn, List<Object> commands, List<SqlStatement> statements,
+			List<String> tableNames) throws SQLException {
+		List<Object> results = new ArrayList<>(commands.size());
+		int i = 0;
+		while (i < commands.size()) {
+			Object x = commands.get(i);
+			String tableName = tableNames.get(i);
+			if (x instanceof SelectCommand) {
+				results.add(new QueryResult<>(_executeQuery(conn, OperationType.query, tableName, statements.get(i),
+						rs -> MysqlUtils.getEntityList(tableName, rs))));
+				i++;
+				continue;
+			}
+			if (x instanceof SelectCountCommand) {
+				results.add(_executeQuery(conn, OperationType.queryCount, tableName, statements.get(i), rs -> {
+					rs.next();
+					return rs.getObject("count", Integer.class);
+				}));
+				i++;
+				continue;
+			}
+			int end = i + 1;
+			while (end < commands.size() && !(commands.get(end) instanceof SelectCommand)
+					&& !(commands.get(end) instanceof SelectCountCommand)) {
+				end++;
+			}
+			if (end - i == 1) {
+				OperationType type = x instanceof InsertCommand ? OperationType.insert
+						: x instanceof UpdateCommand ? OperationType.update : OperationType.delete;
+				results.add(_executeUpdate(conn, type, tableName, statements.get(i)));
+				i++;
+				continue;
+			}
+			results.addAll(_executeBatch(conn, statements.subList(i, end)));
+			i = end;
+		}
+		return results;
+	}
+
+	private List<Integer> _executeBatch(Connection conn, List<SqlStatement> statements) throws SQLException {
+		OperationListener listener = operationListener;
+		long start = listener == null ? 0 : System.nanoTime();
+		Throwable error = null;
+		List<String> sqls = new ArrayList<>(statements.size());
+		try (Statement stmt = conn.createStatement()) {
+			for (SqlStatement x : statements) {
+				log.debug("addBatch> {}", x);
+				sqls.add(x.getSql());
+				stmt.addBatch(x.getSql());
+			}
+			List<Integer> counts = new ArrayList<>(statements.size());
+			for (int x : stmt.executeBatch()) {
+				counts.add(x);
+			}
+			return counts;
+		} catch (Throwable e) {
+			error = e;
+			throw e;
+		} finally {
+			if (listener != null) {
+				_fireOperation(listener, new OperationEvent(OperationType.pipeline, null, StringUtils.join(sqls, ""),
+						Collections.emptyList(), System.nanoTime() - start, error == null ? sqls.size() : -1, error));
+			}
+		}
+	}
+
+	// one prepared statement run once per parameter list, reported as one operation
+	protected int[] _executeBatch(Connection conn, OperationType type, String tableName, String sql,
+			List<List<Object>> paramsList) throws SQLException {
+		OperationListener listener = operationListener;
+		long start = listener == null ? 0 : System.nanoTime();
+		Throwable error = null;
+		log.debug("executeBatch> {} x{}", sql, paramsList.size());
+		PreparedStatement ps = statementCache == null ? conn.prepareStatement(sql) : statementCache.prepare(conn, sql);
+		try {
+			for (List<Object> params : paramsList) {
+				_bindParameters(ps, params);
+				ps.addBatch();
+			}
+			return ps.executeBatch();
+		} catch (Throwable e) {
+			error = e;
+			if (statementCache != null) {
+				// a cached statement must not keep the failed batch
+				ps.clearBatch();
+			}
+			throw e;
+		} finally {
+			_releaseStatement(ps);
+			if (listener != null) {
+				_fireOperation(listener, new OperationEvent(type, tableName, sql, Collections.emptyList(),
+						System.nanoTime() - start, error == null ? paramsList.size() : -1, error));
+			}
+		}
+	}
+
+	/**
+	 * The page selected by the command's pager and the number of rows matching
+	 * without it. The total is knownTotal when given, else it is counted in
+	 * the page query itself with useWindowCount, or by a COUNT(*) statement on
+	 * the same connection. That COUNT(*) costs a second round trip unless
+	 * useMultiQueries sends both statements together.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> PageQueryResult<T> queryPage(Connection conn, SelectCommand command, Integer knownTotal)
+			throws Exception {
+		_applyTableNamePrefix(command);
+		String tableName = command.getTableName();
+		if (knownTotal == null && useWindowCount) {
+			List<Entity> entities = _executeQuery(conn, OperationType.query, tableName,
+					MysqlUtils.buildWindowCountStatement(command, usePreparedStatement),
+					rs -> MysqlUtils.getEntityList(tableName, rs));
+			// an empty page carries no total, it may lie past the last row
+			int total = entities.isEmpty() ? _queryPageTotal(conn, command) : _removeWindowTotal(entities);
+			return new PageQueryResult<>(new QueryResult<>(entities), total);
+		}
+		if (knownTotal == null && useMultiQueries) {
+			// the commands only tell which result each statement returns
+			List<Object> results = _executeMultiQueries(conn,
+					Arrays.asList(new SelectCountCommand(tableName, command.getWhere()), command),
+					Arrays.asList(MysqlUtils.buildCountStatement(command, usePreparedStatement),
+							MysqlUtils.buildStatement(command, usePreparedStatement)),
+					Arrays.asList(tableName, tableName));
+			return new PageQueryResult<>((QueryResult<T>) results.get(1), (Integer) results.get(0));
+		}
+		int total = knownTotal != null ? knownTotal : _queryPageTotal(conn, command);
+		PagerRequest pager = command.getPager();
+		if (knownTotal == null && pager != null && total <= pager.getPageIndex() * pager.getPageSize()) {
+			return new PageQueryResult<>(new QueryResult<>(new ArrayList<>()), total);
+		}
+		List<Entity> entities = _executeQuery(conn, OperationType.query, tableName,
+				MysqlUtils.buildStatement(command, usePreparedStatement), rs -> MysqlUtils.getEntityList(tableName, rs));
+		return new PageQueryResult<>(new QueryResult<>(entities), total);
+	}
+
+	public <T> PageQueryResult<T> queryPage(Connection conn, Class<T> clz, List<String> fieldNames, Condition where,
+			List<Sort> sorts, PagerRequest pager, Integer knownTotal) throws Exception {
+		PageQueryResult<T> pageQueryResult = queryPage(conn,
+				new SelectCommand(_getTableName(clz), _getFieldNames(clz, fieldNames, null), where, sorts, pager),
+				knownTotal);
+		return new PageQueryResult<>(pageQueryResult.getQueryResult().clz(clz), pageQueryResult.getTotal());
+	}
+
+	// the command already has the table prefix applied
+	private int _queryPageTotal(Connection conn, SelectCommand command) throws SQLException {
+		return _executeQuery(conn, OperationType.queryCount, command.getTableName(),
+				MysqlUtils.buildCountStatement(command, usePreparedStatement), rs -> {
+					rs.next();
+					return rs.getObject("count", Integer.class);
+				});
+	}
+
+	private int _removeWindowTotal(List<Entity> entities) {
+		int total = 0;
+		for (Entity entity : entities) {
+			List<Field> fields = entity.getFields();
+			Field last = fields.remove(fields.size() - 1);
+			if (!MysqlUtils.WINDOW_TOTAL_LABEL.equalsIgnoreCase(last.getName())) {
+				throw new RuntimeException("Window count column missing from the page query");
+			}
+			total = ((Number) last.getValue()).intValue();
+		}
+		return total;
+	}
+
+	public <T> KeysetQueryResult<T> queryByKeyset(Connection conn, SelectCommand command, KeysetPager pager)
+			throws Exception {
+		_applyTableNamePrefix(command);
+		Object[] lastValues = pager.getToken() == null ? null : KeysetTokens.decode(pager.getToken());
+		// one row more than the page tells whether there is a next page
+		SqlStatement statement = MysqlUtils.buildKeysetStatement(command, lastValues, pager.getPageSize() + 1,
+				usePreparedStatement);
+		String tableName = command.getTableName();
+		List<Entity> entities = _executeQuery(conn, OperationType.query, tableName, statement,
+				rs -> MysqlUtils.getEntityList(tableName, rs));
+		String nextToken = null;
+		if (entities.size() > pager.getPageSize()) {
+			entities.remove(entities.size() - 1);
+			nextToken = KeysetTokens.encode(_getKeysetValues(command.getSorts(), entities.get(entities.size() - 1)));
+		}
+		return new KeysetQueryResult<>(new QueryResult<>(entities), nextToken);
+	}
+
+	public <T> KeysetQueryResult<T> queryByKeyset(Connection conn, Class<T> clz, List<String> fieldNames,
+			Condition where, List<Sort> sorts, KeysetPager pager) throws Exception {
+		KeysetQueryResult<T> keysetQueryResult = queryByKeyset(conn,
+				new SelectCommand(_getTableName(clz), _getFieldNames(clz, fieldNames, sorts), where, sorts, null),
+				pager);
+		return new KeysetQueryResult<>(keysetQueryResult.getQueryResult().clz(clz), keysetQueryResult.getNextToken());
+	}
+
+	private Object[] _getKeysetValues(List<Sort> sorts, Entity entity) {
+		Object[] values = new Object[sorts.size()];
+		for (int i = 0; i < sorts.size(); i++) {
+			String label = MysqlUtils.getColumnLabel(sorts.get(i).getFieldName());
+			Field field = null;
+			for (Field x : entity.getFields()) {
+				if (label.equalsIgnoreCase(x.getName())) {
+					field = x;
+					break;
+				}
+			}
+			if (field == null) {
+				throw new RuntimeException(
+						String.format("Sort field %s must be selected for keyset pagination", label));
+			}
+			values[i] = field.getValue();
+		}
+		return values;
 	}
 
 	public <T> QueryResult<T> query(Connection conn, Class<T> clz, List<String> fieldNames, Condition where,
 			List<Sort> sorts, PagerRequest pager) throws Exception {
 		QueryResult<T> queryResult = query(conn,
-				new SelectCommand(_getTableName(clz), fieldNames, where, sorts, pager));
+				new SelectCommand(_getTableName(clz), _getFieldNames(clz, fieldNames, null), where, sorts, pager));
 		return queryResult.clz(clz);
 	}
 
+	protected int _executeUpdate(Connection conn, SqlStatement statement) throws SQLException {
+		return _executeUpdate(conn, OperationType.other, null, statement);
+	}
+
+	protected int _executeUpdate(Connection conn, OperationType type, String tableName, SqlStatement statement)
+			throws SQLException {
+		OperationListener listener = operationListener;
+		if (listener == null) {
+			return _doExecuteUpdate(conn, statement);
+		}
+		long start = System.nanoTime();
+		int rows = -1;
+		Throwable error = null;
+		try {
+			rows = _doExecuteUpdate(conn, statement);
+			return rows;
+		} catch (Throwable e) {
+			error = e;
+			throw e;
+		} finally {
+			_fireOperation(listener, new OperationEvent(type, tableName, statement.getSql(), statement.getParams(),
+					System.nanoTime() - start, rows, error));
+		}
+	}
+
+	private int _doExecuteUpdate(Connection conn, SqlStatement statement) throws SQLException {
+		log.debug("executeUpdate> {}", statement);
+		if (!statement.isPrepared()) {
+			try (Statement stmt = conn.createStatement()) {
+				return stmt.executeUpdate(statement.getSql());
+			}
+		}
+		PreparedStatement ps = _prepareStatement(conn, statement);
+		try {
+			return ps.executeUpdate();
+		} finally {
+			_releaseStatement(ps);
+		}
+	}
+
+	protected <R> R _executeQuery(Connection conn, SqlStatement statement, ResultSetHandler<R> handler)
+			throws SQLException {
+		return _executeQuery(conn, OperationType.other, null, statement, handler);
+	}
+
+	protected <R> R _executeQuery(Connection conn, OperationType type, String tableName, SqlStatement statement,
+			ResultSetHandler<R> handler) throws SQLException {
+		OperationListener listener = operationListener;
+		if (listener == null) {
+			return _doExecuteQuery(conn, statement, handler);
+		}
+		long start = System.nanoTime();
+		R result = null;
+		Throwable error = null;
+		try {
+			result = _doExecuteQuery(conn, statement, handler);
+			return result;
+		} catch (Throwable e) {
+			error = e;
+			throw e;
+		} finally {
+			_fireOperation(listener, new OperationEvent(type, tableName, statement.getSql(), statement.getParams(),
+					System.nanoTime() - start, error == null ? _getRowCount(result) : -1, error));
+		}
+	}
+
+	private <R> R _doExecuteQuery(Connection conn, SqlStatement statement, ResultSetHandler<R> handler)
+			throws SQLException {
+		log.debug("executeQuery> {}", statement);
+		if (!statement.isPrepared()) {
+			try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(statement.getSql())) {
+				return handler.handle(rs);
+			}
+		}
+		PreparedStatement ps = _prepareStatement(conn, statement);
+		try (ResultSet rs = ps.executeQuery()) {
+			return handler.handle(rs);
+		} finally {
+			_releaseStatement(ps);
+		}
+	}
+
+	private static int _getRowCount(Object result) {
+		if (result instanceof Collection) {
+			return ((Collection<?>) result).size();
+		}
+		if (result instanceof CompactQueryResult) {
+			return ((CompactQueryResult) result).getRowCount();
+		}
+		// a scalar such as a count
+		return result == null ? 0 : 1;
+	}
+
+	protected void _fireOperation(OperationListener listener, OperationEvent event) {
+		try {
+			listener.onOperation(event);
+		} catch (RuntimeException e) {
+			log.warn("", e);
+		}
+	}
+
+	protected Connection _getConnection(DataSource dataSource) throws SQLException {
+		OperationListener listener = operationListener;
+		if (listener == null) {
+			return dataSource.getConnection();
+		}
+		long start = System.nanoTime();
+		Throwable error = null;
+		try {
+			return dataSource.getConnection();
+		} catch (Throwable e) {
+			error = e;
+			throw e;
+		} finally {
+			try {
+				listener.onConnectionAcquire(System.nanoTime() - start, error);
+			} catch (RuntimeException e) {
+				log.warn("", e);
+			}
+		}
+	}
+
+	private PreparedStatement _prepareStatement(Connection conn, SqlStatement statement) throws SQLException {
+		PreparedStatement ps = statementCache == null ? conn.prepareStatement(statement.getSql())
+				: statementCache.prepare(conn, statement.getSql());
+		_bindParameters(ps, statement.getParams());
+		return ps;
+	}
+
+	private void _bindParameters(PreparedStatement ps, List<Object> params) throws SQLException {
+		for (int i = 0; i < params.size(); i++) {
+			ps.setObject(i + 1, params.get(i));
+		}
+	}
+
+	private void _releaseStatement(PreparedStatement ps) throws SQLException {
+		if (statementCache == null) {
+			ps.close();
+		}
+	}
+
+	public <T> List<T> queryObjects(Connection conn, Class<T> clz, List<String> fieldNames, Condition where,
+			List<Sort> sorts, PagerRequest pager) throws Exception {
+		return _queryObjects(conn, clz,
+				new SelectCommand(_getTableName(clz), _getFieldNames(clz, fieldNames, null), where, sorts, pager));
+	}
+
+	// reads the columns of dtoClass's fields from the table of entityClass
+	public <T> List<T> queryProjection(Connection conn, Class<?> entityClass, Class<T> dtoClass, Condition where,
+			List<Sort> sorts, PagerRequest pager) throws Exception {
+		List<String> columnNames = RowMapper.getColumnNames(dtoClass);
+		return _queryObjects(conn, dtoClass, new SelectCommand(_getTableName(entityClass),
+				columnNames.isEmpty() ? null : columnNames, where, sorts, pager));
+	}
+
+	private <T> List<T> _queryObjects(Connection conn, Class<T> clz, SelectCommand command) throws Exception {
+		_applyTableNamePrefix(command);
+		return _executeQuery(conn, OperationType.query, command.getTableName(),
+				MysqlUtils.buildStatement(command, usePreparedStatement),
+				rs -> RowMapper.of(clz, rs.getMetaData()).mapAll(rs));
+	}
+
 	public void execute(DataSource dataSource, Transaction transaction) throws MicroOssException {
-		Connection conn = null;
+		RetryPolicy policy = retryPolicy;
+		if (policy == null) {
+			_executeOnNewConnection(dataSource, transaction);
+			return;
+		}
+		policy.onTransaction();
+		for (int retry = 0;; retry++) {
+			try {
+				_executeOnNewConnection(dataSource, transaction);
+				return;
+			} catch (MicroOssException e) {
+				if (!policy.shouldRetry(e, retry)) {
+					throw e;
+				}
+				long backoffMillis = policy.getBackoffMillis(retry);
+				log.warn("transaction retry> {} #{} in {}ms after {}", transaction.getTransactionId(), retry + 1,
+						backoffMillis, e.getCause() == null ? e : e.getCause());
+				OperationListener listener = operationListener;
+				if (listener != null) {
+					try {
+						listener.onTransactionRetry(transaction.getTransactionId(), retry + 1, e);
+					} catch (RuntimeException listenerException) {
+						log.warn("", listenerException);
+					}
+				}
+				try {
+					Thread.sleep(backoffMillis);
+				} catch (InterruptedException interruptedException) {
+					Thread.currentThread().interrupt();
+					throw e;
+				}
+			}
+		}
+	}
+
+	private void _executeOnNewConnection(DataSource dataSource, Transaction transaction) throws MicroOssException {
+		Connection conn;
+		try {
+			conn = _getConnection(dataSource);
+		} catch (SQLException e) {
+			throw new MicroOssException(e);
+		}
+		try {
+			_execute(conn, dataSource, transaction);
+		} finally {
+			try {
+				conn.close();
+			} catch (SQLException sqlException) {
+				// ignore
+				log.warn("", sqlException);
+			}
+		}
+	}
+
+	/**
+	 * Runs the transaction on a connection owned by the caller, which is left
+	 * open with its auto-commit mode restored. requiresNew propagation is not
+	 * available to nested calls, as there is no DataSource to get a second
+	 * connection from.
+	 */
+	public void execute(Connection conn, Transaction transaction) throws MicroOssException {
+		_execute(conn, null, transaction);
+	}
+
+	private void _execute(Connection conn, DataSource dataSource, Transaction transaction) throws MicroOssException {
+		OperationListener listener = operationListener;
+		long start = listener == null ? 0 : System.nanoTime();
+		Throwable error = null;
+		Boolean autoCommit = null;
 		try {
 			log.debug("transaction execute> {}", transaction.getTransactionId());
-			conn = dataSource.getConnection();
+			autoCommit = conn.getAutoCommit();
 			conn.setAutoCommit(false);
-			transaction.execute(new TransactionMysqlMicroOssProvider(conn, dataSource, getConfig()));
+			TransactionMysqlMicroOssProvider provider = new TransactionMysqlMicroOssProvider(conn, dataSource, this);
+			transaction.execute(provider);
+			if (provider.getRollbackOnlyCause() != null) {
+				// inner work failed and was caught, the outer work must not be committed on its own
+				throw new MicroOssException(provider.getRollbackOnlyCause());
+			}
 			conn.commit();
+			// drop results cached by readers that ran between the write and the commit
+			for (String tableName : provider.getWrittenTables()) {
+				_invalidate(tableName);
+			}
 			log.debug("transaction commit> {}", transaction.getTransactionId());
 		} catch (Exception e) {
+			error = e;
 			try {
 				conn.rollback();
 				log.debug("transaction rollback> {}", transaction.getTransactionId());
@@ -158,13 +1398,22 @@ public abstract class RawMysqlMicroOssProvider {
 				// ignore
 				log.warn("", sqlException);
 			}
-			throw new MicroOssException(e);
+			throw e instanceof MicroOssException ? (MicroOssException) e : new MicroOssException(e);
 		} finally {
-			try {
-				conn.close();
-			} catch (SQLException sqlException) {
-				// ignore
-				log.warn("", sqlException);
+			if (listener != null) {
+				try {
+					listener.onTransaction(transaction.getTransactionId(), System.nanoTime() - start, error);
+				} catch (RuntimeException e) {
+					log.warn("", e);
+				}
+			}
+			if (autoCommit != null) {
+				try {
+					conn.setAutoCommit(autoCommit);
+				} catch (SQLException sqlException) {
+					// ignore
+					log.warn("", sqlException);
+				}
 			}
 		}
 	}
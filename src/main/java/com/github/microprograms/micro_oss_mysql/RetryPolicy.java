@@ -0,0 +1,152 @@
+package com.github.microprograms.micro_oss_mysql;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * When and how often a failed transaction is replayed on a fresh connection.
+ * A failure is retryable when an SQLException in its cause chain carries one
+ * of the vendor codes (by default 1213 deadlock and 1205 lock wait timeout) or
+ * SQL states (by default 40001 serialization failure). Retry n waits a random
+ * time between 0 and min(maxBackoffMillis, initialBackoffMillis * 2^n).
+ * <p>
+ * Retries are also limited by a budget shared by all transactions of the
+ * provider: every transaction earns budgetRatio of a retry, every retry spends
+ * one, and at most maxBudget are saved up, so that under sustained contention
+ * retries stay a fraction of the load instead of multiplying it.
+ * <p>
+ * The whole Transaction is executed again, so it must not have side effects
+ * outside the database.
+ */
+public class RetryPolicy {
+	private static final int UNITS_PER_RETRY = 1000;
+
+	private int maxRetries = 3;
+	private long initialBackoffMillis = 20;
+	private long maxBackoffMillis = 1000;
+	private double budgetRatio = 0.1;
+	private int maxBudget = 10;
+	private Set<Integer> vendorCodes = new HashSet<>(Arrays.asList(1213, 1205));
+	private Set<String> sqlStates = new HashSet<>(Arrays.asList("40001"));
+	private final AtomicLong budgetUnits = new AtomicLong((long) maxBudget * UNITS_PER_RETRY);
+	private final AtomicLong retryCount = new AtomicLong();
+	private final AtomicLong budgetExhaustedCount = new AtomicLong();
+
+	public int getMaxRetries() {
+		return maxRetries;
+	}
+
+	public void setMaxRetries(int maxRetries) {
+		this.maxRetries = maxRetries;
+	}
+
+	public long getInitialBackoffMillis() {
+		return initialBackoffMillis;
+	}
+
+	public void setInitialBackoffMillis(long initialBackoffMillis) {
+		this.initialBackoffMillis = initialBackoffMillis;
+	}
+
+	public long getMaxBackoffMillis() {
+		return maxBackoffMillis;
+	}
+
+	public void setMaxBackoffMillis(long maxBackoffMillis) {
+		this.maxBackoffMillis = maxBackoffMillis;
+	}
+
+	public double getBudgetRatio() {
+		return budgetRatio;
+	}
+
+	public void setBudgetRatio(double budgetRatio) {
+		this.budgetRatio = budgetRatio;
+	}
+
+	public int getMaxBudget() {
+		return maxBudget;
+	}
+
+	public void setMaxBudget(int maxBudget) {
+		this.maxBudget = maxBudget;
+		budgetUnits.set((long) maxBudget * UNITS_PER_RETRY);
+	}
+
+	public Set<Integer> getVendorCodes() {
+		return vendorCodes;
+	}
+
+	public void setVendorCodes(Set<Integer> vendorCodes) {
+		this.vendorCodes = vendorCodes;
+	}
+
+	public Set<String> getSqlStates() {
+		return sqlStates;
+	}
+
+	public void setSqlStates(Set<String> sqlStates) {
+		this.sqlStates = sqlStates;
+	}
+
+	public long getRetryCount() {
+		return retryCount.get();
+	}
+
+	// retryable failures given up on because the budget was spent
+	public long getBudgetExhaustedCount() {
+		return budgetExhaustedCount.get();
+	}
+
+	public boolean isRetryable(Throwable error) {
+		for (Throwable x = error; x != null; x = x.getCause() == x ? null : x.getCause()) {
+			if (x instanceof SQLException) {
+				SQLException e = (SQLException) x;
+				if (vendorCodes.contains(e.getErrorCode())
+						|| (e.getSQLState() != null && sqlStates.contains(e.getSQLState()))) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	// called once per transaction, before its first attempt
+	void onTransaction() {
+		long earned = (long) (budgetRatio * UNITS_PER_RETRY);
+		long max = (long) maxBudget * UNITS_PER_RETRY;
+		long current;
+		while ((current = budgetUnits.get()) < max
+				&& !budgetUnits.compareAndSet(current, Math.min(max, current + earned))) {
+		}
+	}
+
+	// retry is the number of the retry about to be made, starting at 0
+	boolean shouldRetry(Throwable error, int retry) {
+		if (retry >= maxRetries || !isRetryable(error)) {
+			return false;
+		}
+		long current;
+		do {
+			current = budgetUnits.get();
+			if (current < UNITS_PER_RETRY) {
+				budgetExhaustedCount.incrementAndGet();
+				return false;
+			}
+		} while (!budgetUnits.compareAndSet(current, current - UNITS_PER_RETRY));
+		retryCount.incrementAndGet();
+		return true;
+	}
+
+	long getBackoffMillis(int retry) {
+		long ceiling = initialBackoffMillis << Math.min(retry, 30);
+		if (ceiling <= 0 || ceiling > maxBackoffMillis) {
+			ceiling = maxBackoffMillis;
+		}
+		return ceiling <= 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1);
+	}
+}
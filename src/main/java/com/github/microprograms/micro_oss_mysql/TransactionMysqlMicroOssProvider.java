@@ -1,15 +1,20 @@
 package com.github.microprograms.micro_oss_mysql;
 
 import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 import javax.sql.DataSource;
 
-import com.github.microprograms.micro_oss_core.MicroOssConfig;
-import com.github.microprograms.micro_oss_core.MicroOssProvider;
 import com.github.microprograms.micro_oss_core.QueryResult;
 import com.github.microprograms.micro_oss_core.Transaction;
 import com.github.microprograms.micro_oss_core.exception.MicroOssException;
+import com.github.microprograms.micro_oss_core.model.Entity;
 import com.github.microprograms.micro_oss_core.model.Field;
 import com.github.microprograms.micro_oss_core.model.ddl.CreateTableCommand;
 import com.github.microprograms.micro_oss_core.model.ddl.DropTableCommand;
@@ -21,18 +26,55 @@ import com.github.microprograms.micro_oss_core.model.dml.query.Sort;
 import com.github.microprograms.micro_oss_core.model.dml.update.DeleteCommand;
 import com.github.microprograms.micro_oss_core.model.dml.update.InsertCommand;
 import com.github.microprograms.micro_oss_core.model.dml.update.UpdateCommand;
+import com.github.microprograms.micro_oss_mysql.model.ddl.IndexDefinition;
+import com.github.microprograms.micro_oss_mysql.model.ddl.MysqlTableDefinition;
+import com.github.microprograms.micro_oss_mysql.model.dml.InsertBatchCommand;
+import com.github.microprograms.micro_oss_mysql.model.dml.KeysetPager;
+import com.github.microprograms.micro_oss_mysql.model.dml.PipelineCommand;
+import com.github.microprograms.micro_oss_mysql.model.dml.UpsertCommand;
 
-class TransactionMysqlMicroOssProvider extends RawMysqlMicroOssProvider implements MicroOssProvider {
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+class TransactionMysqlMicroOssProvider extends RawMysqlMicroOssProvider implements MysqlMicroOssOperations {
+	private static final Logger log = LoggerFactory.getLogger(TransactionMysqlMicroOssProvider.class);
 
 	private Connection conn;
 	private DataSource dataSource;
+	private Set<String> writtenTables = new HashSet<>();
+	private Exception rollbackOnlyCause;
 
-	public TransactionMysqlMicroOssProvider(Connection conn, DataSource dataSource, MicroOssConfig config) {
-		super(config);
+	public TransactionMysqlMicroOssProvider(Connection conn, DataSource dataSource, RawMysqlMicroOssProvider parent) {
+		super(parent);
 		this.conn = conn;
 		this.dataSource = dataSource;
 	}
 
+	Connection getConnection() {
+		return conn;
+	}
+
+	public Set<String> getWrittenTables() {
+		return writtenTables;
+	}
+
+	// set when inner work failed in a way the outer transaction cannot recover from
+	Exception getRollbackOnlyCause() {
+		return rollbackOnlyCause;
+	}
+
+	private void _setRollbackOnly(Exception cause) {
+		if (rollbackOnlyCause == null) {
+			rollbackOnlyCause = cause;
+		}
+	}
+
+	@Override
+	protected void _invalidate(String tableName) {
+		writtenTables.add(tableName);
+		super._invalidate(tableName);
+	}
+
 	@Override
 	public void createTable(CreateTableCommand command) throws MicroOssException {
 		try {
@@ -42,6 +84,30 @@ class TransactionMysqlMicroOssProvider extends RawMysqlMicroOssProvider implemen
 		}
 	}
 
+	@Override
+	public void createTable(CreateTableCommand command, MysqlTableDefinition mysqlDefinition)
+			throws MicroOssException {
+		try {
+			createTable(conn, command, mysqlDefinition);
+		} catch (Exception e) {
+			throw new MicroOssException(e);
+		}
+	}
+
+	@Override
+	public List<String> ensureIndexes(String tableName, List<IndexDefinition> indexes) throws MicroOssException {
+		try {
+			return ensureIndexes(conn, tableName, indexes);
+		} catch (Exception e) {
+			throw new MicroOssException(e);
+		}
+	}
+
+	@Override
+	public List<String> ensureIndexes(Class<?> clz, List<IndexDefinition> indexes) throws MicroOssException {
+		return ensureIndexes(_getTableName(clz), indexes);
+	}
+
 	@Override
 	public void dropTable(DropTableCommand command) throws MicroOssException {
 		try {
@@ -105,6 +171,241 @@ class TransactionMysqlMicroOssProvider extends RawMysqlMicroOssProvider implemen
 		}
 	}
 
+	@Override
+	public CompactQueryResult queryCompact(SelectCommand command) throws MicroOssException {
+		try {
+			return queryCompact(conn, command);
+		} catch (Exception e) {
+			throw new MicroOssException(e);
+		}
+	}
+
+	@Override
+	public EntityCursor openCursor(SelectCommand command) throws MicroOssException {
+		try {
+			return openCursor(conn, command, false);
+		} catch (Exception e) {
+			throw new MicroOssException(e);
+		}
+	}
+
+	@Override
+	public int query(SelectCommand command, EntityCallback callback) throws MicroOssException {
+		try {
+			return query(conn, command, callback);
+		} catch (Exception e) {
+			throw new MicroOssException(e);
+		}
+	}
+
+	@Override
+	public KeysetQueryResult<?> queryByKeyset(SelectCommand command, KeysetPager pager) throws MicroOssException {
+		try {
+			return queryByKeyset(conn, command, pager);
+		} catch (Exception e) {
+			throw new MicroOssException(e);
+		}
+	}
+
+	@Override
+	public <T> KeysetQueryResult<T> queryByKeyset(Class<T> clz, Condition where, List<Sort> sorts, KeysetPager pager)
+			throws MicroOssException {
+		return queryByKeyset(clz, null, where, sorts, pager);
+	}
+
+	@Override
+	public <T> KeysetQueryResult<T> queryByKeyset(Class<T> clz, List<String> fieldNames, Condition where,
+			List<Sort> sorts, KeysetPager pager) throws MicroOssException {
+		try {
+			return queryByKeyset(conn, clz, fieldNames, where, sorts, pager);
+		} catch (Exception e) {
+			throw new MicroOssException(e);
+		}
+	}
+
+	@Override
+	public int queryCount(SelectCountCommand command, CountMode mode) throws MicroOssException {
+		try {
+			return queryCount(conn, command, mode);
+		} catch (Exception e) {
+			throw new MicroOssException(e);
+		}
+	}
+
+	@Override
+	public int queryCount(Class<?> clz, Condition where, CountMode mode) throws MicroOssException {
+		try {
+			return queryCount(conn, clz, where, mode);
+		} catch (Exception e) {
+			throw new MicroOssException(e);
+		}
+	}
+
+	@Override
+	public PageQueryResult<?> queryPage(SelectCommand command, Integer knownTotal) throws MicroOssException {
+		try {
+			return queryPage(conn, command, knownTotal);
+		} catch (Exception e) {
+			throw new MicroOssException(e);
+		}
+	}
+
+	@Override
+	public <T> PageQueryResult<T> queryPage(Class<T> clz, Condition where, List<Sort> sorts, PagerRequest pager,
+			Integer knownTotal) throws MicroOssException {
+		return queryPage(clz, null, where, sorts, pager, knownTotal);
+	}
+
+	@Override
+	public <T> PageQueryResult<T> queryPage(Class<T> clz, List<String> fieldNames, Condition where, List<Sort> sorts,
+			PagerRequest pager, Integer knownTotal) throws MicroOssException {
+		try {
+			return queryPage(conn, clz, fieldNames, where, sorts, pager, knownTotal);
+		} catch (Exception e) {
+			throw new MicroOssException(e);
+		}
+	}
+
+	@Override
+	public <T> List<T> queryObjects(Class<T> clz, Condition where, List<Sort> sorts, PagerRequest pager)
+			throws MicroOssException {
+		return queryObjects(clz, null, where, sorts, pager);
+	}
+
+	@Override
+	public <T> List<T> queryObjects(Class<T> clz, List<String> fieldNames, Condition where, List<Sort> sorts,
+			PagerRequest pager) throws MicroOssException {
+		try {
+			return queryObjects(conn, clz, fieldNames, where, sorts, pager);
+		} catch (Exception e) {
+			throw new MicroOssException(e);
+		}
+	}
+
+	@Override
+	public <T> List<T> queryProjection(Class<?> entityClass, Class<T> dtoClass, Condition where, List<Sort> sorts,
+			PagerRequest pager) throws MicroOssException {
+		try {
+			return queryProjection(conn, entityClass, dtoClass, where, sorts, pager);
+		} catch (Exception e) {
+			throw new MicroOssException(e);
+		}
+	}
+
+	@Override
+	public int[] insertObjects(InsertBatchCommand command) throws MicroOssException {
+		try {
+			return insertObjects(conn, command);
+		} catch (Exception e) {
+			throw new MicroOssException(e);
+		}
+	}
+
+	@Override
+	public int[] insertObjects(Collection<?> objects) throws MicroOssException {
+		try {
+			return insertObjects(conn, objects);
+		} catch (Exception e) {
+			throw new MicroOssException(e);
+		}
+	}
+
+	@Override
+	public int[] upsertObjects(UpsertCommand command) throws MicroOssException {
+		try {
+			return upsertObjects(conn, command);
+		} catch (Exception e) {
+			throw new MicroOssException(e);
+		}
+	}
+
+	@Override
+	public int[] upsertObjects(Collection<?> objects, List<String> primaryKeyFieldNames,
+			List<String> updateFieldNames) throws MicroOssException {
+		try {
+			return upsertObjects(conn, objects, primaryKeyFieldNames, updateFieldNames);
+		} catch (Exception e) {
+			throw new MicroOssException(e);
+		}
+	}
+
+	@Override
+	public BulkLoadResult loadEntities(Iterator<Entity> entities) throws MicroOssException {
+		try {
+			return loadEntities(conn, entities);
+		} catch (Exception e) {
+			throw new MicroOssException(e);
+		}
+	}
+
+	@Override
+	public BulkLoadResult loadObjects(Iterator<?> objects) throws MicroOssException {
+		try {
+			return loadObjects(conn, objects);
+		} catch (Exception e) {
+			throw new MicroOssException(e);
+		}
+	}
+
+	@Override
+	public List<Object> executePipeline(PipelineCommand command) throws MicroOssException {
+		try {
+			return executePipeline(conn, command);
+		} catch (Exception e) {
+			throw new MicroOssException(e);
+		}
+	}
+
+	@Override
+	public void createBlobTable() throws MicroOssException {
+		try {
+			createBlobTable(conn);
+		} catch (Exception e) {
+			throw new MicroOssException(e);
+		}
+	}
+
+	@Override
+	public BlobOutputStream openBlobOutputStream(String blobId) throws MicroOssException {
+		try {
+			return openBlobOutputStream(conn, blobId, false);
+		} catch (Exception e) {
+			throw new MicroOssException(e);
+		}
+	}
+
+	@Override
+	public BlobInputStream openBlobInputStream(String blobId) throws MicroOssException {
+		return openBlobInputStream(blobId, 0, -1);
+	}
+
+	@Override
+	public BlobInputStream openBlobInputStream(String blobId, long offset, long length) throws MicroOssException {
+		try {
+			return openBlobInputStream(conn, blobId, offset, length, false);
+		} catch (Exception e) {
+			throw new MicroOssException(e);
+		}
+	}
+
+	@Override
+	public long getBlobLength(String blobId) throws MicroOssException {
+		try {
+			return getBlobLength(conn, blobId);
+		} catch (Exception e) {
+			throw new MicroOssException(e);
+		}
+	}
+
+	@Override
+	public int deleteBlob(String blobId) throws MicroOssException {
+		try {
+			return deleteBlob(conn, blobId);
+		} catch (Exception e) {
+			throw new MicroOssException(e);
+		}
+	}
+
 	@Override
 	public int updateObject(Class<?> clz, List<Field> fields, Condition where) throws MicroOssException {
 		try {
@@ -160,6 +461,66 @@ class TransactionMysqlMicroOssProvider extends RawMysqlMicroOssProvider implemen
 
 	@Override
 	public void execute(Transaction transaction) throws MicroOssException {
-		execute(dataSource, transaction);
+		switch (getTransactionPropagation()) {
+		case requiresNew:
+			if (dataSource == null) {
+				throw new MicroOssException(new UnsupportedOperationException(
+						"requiresNew needs a DataSource, the outer transaction runs on a caller's connection"));
+			}
+			execute(dataSource, transaction);
+			break;
+		case join:
+			try {
+				transaction.execute(this);
+			} catch (Exception e) {
+				_setRollbackOnly(e);
+				throw e instanceof MicroOssException ? (MicroOssException) e : new MicroOssException(e);
+			}
+			break;
+		default:
+			executeNested(transaction);
+		}
+	}
+
+	private void executeNested(Transaction transaction) throws MicroOssException {
+		Savepoint savepoint;
+		try {
+			savepoint = conn.setSavepoint();
+			log.debug("transaction savepoint> {}", transaction.getTransactionId());
+		} catch (SQLException e) {
+			throw new MicroOssException(e);
+		}
+		try {
+			transaction.execute(this);
+			conn.releaseSavepoint(savepoint);
+			log.debug("transaction release savepoint> {}", transaction.getTransactionId());
+		} catch (Exception e) {
+			if (_isTransactionRolledBack(e)) {
+				// InnoDB already rolled back the whole transaction, the savepoint is gone
+				_setRollbackOnly(e);
+			} else {
+				try {
+					conn.rollback(savepoint);
+					log.debug("transaction rollback to savepoint> {}", transaction.getTransactionId());
+				} catch (SQLException sqlException) {
+					log.warn("", sqlException);
+					_setRollbackOnly(e);
+				}
+			}
+			throw e instanceof MicroOssException ? (MicroOssException) e : new MicroOssException(e);
+		}
+	}
+
+	// deadlock (1213) or serialization failure (40001)
+	private static boolean _isTransactionRolledBack(Throwable error) {
+		for (Throwable x = error; x != null; x = x.getCause() == x ? null : x.getCause()) {
+			if (x instanceof SQLException) {
+				SQLException e = (SQLException) x;
+				if (e.getErrorCode() == 1213 || "40001".equals(e.getSQLState())) {
+					return true;
+				}
+			}
+		}
+		return false;
 	}
 }
@@ -0,0 +1,26 @@
+package com.github.microprograms.micro_oss_mysql;
+
+/**
+ * How execute(Transaction) behaves when called on the provider passed to a
+ * running transaction.
+ */
+public enum TransactionPropagation {
+	/**
+	 * Same connection, inside a savepoint: a failure rolls back to the
+	 * savepoint and is rethrown, the outer transaction may catch it and go on.
+	 * A deadlock or serialization failure, or a failed rollback to the
+	 * savepoint, rolls back the outer transaction even if it catches it.
+	 */
+	nested,
+	/**
+	 * A new transaction on a second connection, committed independently of the
+	 * outer one.
+	 */
+	requiresNew,
+	/**
+	 * Same connection, no savepoint: the inner work is part of the outer
+	 * transaction and a failure rolls back everything, even if the outer
+	 * transaction catches it.
+	 */
+	join
+}
@@ -0,0 +1,36 @@
+package com.github.microprograms.micro_oss_mysql;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+import com.github.microprograms.micro_oss_core.Transaction;
+import com.github.microprograms.micro_oss_core.exception.MicroOssException;
+
+/**
+ * Runs every call on one connection held until {@link #close()}, in
+ * auto-commit mode, so a request making several calls checks out a single
+ * pooled connection. Not thread-safe. execute(Transaction) starts a real
+ * transaction on the held connection; it is not retried by the RetryPolicy.
+ */
+public class UnitOfWork extends TransactionMysqlMicroOssProvider implements AutoCloseable {
+
+	UnitOfWork(Connection conn, DataSource dataSource, RawMysqlMicroOssProvider parent) {
+		super(conn, dataSource, parent);
+	}
+
+	@Override
+	public void execute(Transaction transaction) throws MicroOssException {
+		execute(getConnection(), transaction);
+	}
+
+	@Override
+	public void close() throws MicroOssException {
+		try {
+			getConnection().close();
+		} catch (SQLException e) {
+			throw new MicroOssException(e);
+		}
+	}
+}
@@ -0,0 +1,305 @@
+package com.github.microprograms.micro_oss_mysql;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.github.microprograms.micro_oss_core.exception.MicroOssException;
+import com.github.microprograms.micro_oss_core.model.Field;
+import com.github.microprograms.micro_oss_core.utils.MicroOssUtils;
+import com.github.microprograms.micro_oss_mysql.metrics.OperationType;
+import com.github.microprograms.micro_oss_mysql.utils.MysqlUtils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Buffers updates keyed by table and primary key, merging later field values
+ * over earlier ones, and writes them as JDBC batches of
+ * {@code UPDATE ... WHERE key=?} statements, one update operation per batch
+ * for the provider's OperationListener, when maxPendingKeys/2 keys are
+ * pending or every flushIntervalMillis. Keys being written count as pending
+ * until the write succeeds, and a failed write puts them back. When
+ * maxPendingKeys keys are pending, an update for a new key waits up to
+ * offerTimeoutMillis for a flush. close() retries the final flush
+ * closeFlushAttempts times; if it still fails, the updates stay in the buffer
+ * and flush() may be called again after close().
+ */
+public class WriteBehindBuffer implements AutoCloseable {
+	private static final Logger log = LoggerFactory.getLogger(WriteBehindBuffer.class);
+
+	private final MysqlMicroOssProvider provider;
+	private final int maxPendingKeys;
+	private final int flushThreshold;
+	private final ScheduledExecutorService scheduler;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notFull = lock.newCondition();
+	private final ReentrantLock flushLock = new ReentrantLock();
+	private final AtomicBoolean flushRequested = new AtomicBoolean();
+	private LinkedHashMap<PendingKey, Map<String, Object>> pending = new LinkedHashMap<>();
+	// keys drained by the flush in progress
+	private int flushingKeys;
+	private long offerTimeoutMillis = 1000;
+	private int closeFlushAttempts = 3;
+	private volatile boolean closed;
+
+	public WriteBehindBuffer(MysqlMicroOssProvider provider, int maxPendingKeys, long flushIntervalMillis) {
+		this.provider = provider;
+		this.maxPendingKeys = maxPendingKeys;
+		this.flushThreshold = Math.max(1, maxPendingKeys / 2);
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "micro-oss-write-behind");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis,
+				TimeUnit.MILLISECONDS);
+	}
+
+	public long getOfferTimeoutMillis() {
+		return offerTimeoutMillis;
+	}
+
+	public void setOfferTimeoutMillis(long offerTimeoutMillis) {
+		this.offerTimeoutMillis = offerTimeoutMillis;
+	}
+
+	public int getCloseFlushAttempts() {
+		return closeFlushAttempts;
+	}
+
+	public void setCloseFlushAttempts(int closeFlushAttempts) {
+		this.closeFlushAttempts = closeFlushAttempts;
+	}
+
+	public int getPendingKeys() {
+		lock.lock();
+		try {
+			return pending.size() + flushingKeys;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public void updateObject(Class<?> clz, String keyFieldName, Object keyValue, List<Field> fields)
+			throws MicroOssException {
+		updateObject(MicroOssUtils.getTableName(clz), keyFieldName, keyValue, fields);
+	}
+
+	public void updateObject(String tableName, String keyFieldName, Object keyValue, List<Field> fields)
+			throws MicroOssException {
+		PendingKey key = new PendingKey(tableName, keyFieldName, keyValue);
+		int size;
+		lock.lock();
+		try {
+			long nanos = TimeUnit.MILLISECONDS.toNanos(offerTimeoutMillis);
+			while (!closed && pending.size() + flushingKeys >= maxPendingKeys && !pending.containsKey(key)) {
+				requestFlush();
+				if (nanos <= 0) {
+					throw new MicroOssException(new RejectedExecutionException("Write-behind buffer is full"));
+				}
+				nanos = notFull.awaitNanos(nanos);
+			}
+			if (closed) {
+				throw new MicroOssException(new IllegalStateException("Write-behind buffer is closed"));
+			}
+			Map<String, Object> values = pending.computeIfAbsent(key, x -> new LinkedHashMap<>());
+			for (Field field : fields) {
+				values.put(field.getName(), field.getValue());
+			}
+			size = pending.size();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MicroOssException(e);
+		} finally {
+			lock.unlock();
+		}
+		if (size >= flushThreshold) {
+			requestFlush();
+		}
+	}
+
+	public void flush() throws MicroOssException {
+		flushLock.lock();
+		try {
+			LinkedHashMap<PendingKey, Map<String, Object>> drained;
+			lock.lock();
+			try {
+				if (pending.isEmpty()) {
+					return;
+				}
+				drained = pending;
+				pending = new LinkedHashMap<>();
+				flushingKeys = drained.size();
+			} finally {
+				lock.unlock();
+			}
+			try {
+				write(drained);
+			} catch (Exception e) {
+				requeue(drained);
+				throw new MicroOssException(e);
+			}
+			lock.lock();
+			try {
+				flushingKeys = 0;
+				notFull.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		} finally {
+			flushLock.unlock();
+		}
+	}
+
+	@Override
+	public void close() throws MicroOssException {
+		closed = true;
+		lock.lock();
+		try {
+			notFull.signalAll();
+		} finally {
+			lock.unlock();
+		}
+		scheduler.shutdown();
+		try {
+			scheduler.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		for (int attempt = 1;; attempt++) {
+			try {
+				flush();
+				return;
+			} catch (MicroOssException e) {
+				if (attempt >= closeFlushAttempts || Thread.currentThread().isInterrupted()) {
+					log.warn("write-behind buffer closed with {} unwritten keys", getPendingKeys());
+					throw e;
+				}
+				log.warn("write-behind final flush failed, attempt {}", attempt, e);
+			}
+			try {
+				Thread.sleep(100L * attempt);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private void requestFlush() {
+		if (flushRequested.compareAndSet(false, true)) {
+			try {
+				scheduler.execute(() -> {
+					flushRequested.set(false);
+					flushQuietly();
+				});
+			} catch (RejectedExecutionException e) {
+				flushRequested.set(false);
+			}
+		}
+	}
+
+	private void flushQuietly() {
+		try {
+			flush();
+		} catch (Exception e) {
+			log.warn("write-behind flush failed", e);
+		}
+	}
+
+	private void write(Map<PendingKey, Map<String, Object>> drained) throws Exception {
+		// one batch per statement shape: table, key field and updated fields
+		Map<String, Batch> batches = new LinkedHashMap<>();
+		Set<String> tableNames = new HashSet<>();
+		for (Map.Entry<PendingKey, Map<String, Object>> entry : drained.entrySet()) {
+			PendingKey key = entry.getKey();
+			String tableNameWithPrefix = provider._getTableNameWithPrefix(key.tableName);
+			String sql = MysqlUtils.buildKeyedUpdateSql(tableNameWithPrefix, new ArrayList<>(entry.getValue().keySet()),
+					key.keyFieldName);
+			List<Object> params = new ArrayList<>(entry.getValue().values());
+			params.add(key.keyValue);
+			batches.computeIfAbsent(sql, x -> new Batch(tableNameWithPrefix)).paramsList.add(params);
+			tableNames.add(key.tableName);
+		}
+		try (Connection conn = provider.getWriteConnection()) {
+			for (Map.Entry<String, Batch> batch : batches.entrySet()) {
+				provider._executeBatch(conn, OperationType.update, batch.getValue().tableNameWithPrefix,
+						batch.getKey(), batch.getValue().paramsList);
+			}
+		} finally {
+			for (String tableName : tableNames) {
+				provider._invalidate(tableName);
+			}
+		}
+	}
+
+	// puts failed updates back without overwriting values written since the drain;
+	// new keys were counted against maxPendingKeys together with the drained ones, so the merge stays within it
+	private void requeue(Map<PendingKey, Map<String, Object>> drained) {
+		lock.lock();
+		try {
+			LinkedHashMap<PendingKey, Map<String, Object>> merged = new LinkedHashMap<>(drained);
+			for (Map.Entry<PendingKey, Map<String, Object>> entry : pending.entrySet()) {
+				Map<String, Object> values = merged.get(entry.getKey());
+				if (values == null) {
+					merged.put(entry.getKey(), entry.getValue());
+				} else {
+					values.putAll(entry.getValue());
+				}
+			}
+			pending = merged;
+			flushingKeys = 0;
+			notFull.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private static class Batch {
+		final String tableNameWithPrefix;
+		final List<List<Object>> paramsList = new ArrayList<>();
+
+		Batch(String tableNameWithPrefix) {
+			this.tableNameWithPrefix = tableNameWithPrefix;
+		}
+	}
+
+	private static class PendingKey {
+		final String tableName;
+		final String keyFieldName;
+		final Object keyValue;
+
+		PendingKey(String tableName, String keyFieldName, Object keyValue) {
+			this.tableName = tableName;
+			this.keyFieldName = keyFieldName;
+			this.keyValue = keyValue;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof PendingKey)) {
+				return false;
+			}
+			PendingKey that = (PendingKey) o;
+			return tableName.equals(that.tableName) && keyFieldName.equals(that.keyFieldName)
+					&& Objects.equals(keyValue, that.keyValue);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(tableName, keyFieldName, keyValue);
+		}
+	}
+}
@@ -0,0 +1,159 @@
+package com.github.microprograms.micro_oss_mysql.cache;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache with per-entry TTL, keyed on rendered SQL. Every entry
+ * remembers the tables it was read from so that a write to any of them drops
+ * it.
+ */
+public class QueryResultCache {
+	private final int maxEntries;
+	private final long ttlMillis;
+	private final LinkedHashMap<String, CacheEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private final Map<String, Set<String>> keysByTable = new HashMap<>();
+	private final Map<String, Long> invalidatedVersions = new HashMap<>();
+	private long version;
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+	private final AtomicLong evictionCount = new AtomicLong();
+	private final AtomicLong invalidationCount = new AtomicLong();
+
+	public QueryResultCache(int maxEntries, long ttlMillis) {
+		this.maxEntries = maxEntries;
+		this.ttlMillis = ttlMillis;
+	}
+
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	public long getTtlMillis() {
+		return ttlMillis;
+	}
+
+	// take before reading from the database and pass to put()
+	public synchronized long getVersion() {
+		return version;
+	}
+
+	public synchronized Object get(String key) {
+		CacheEntry entry = entries.get(key);
+		if (entry == null) {
+			missCount.incrementAndGet();
+			return null;
+		}
+		if (entry.expiresAt <= System.currentTimeMillis()) {
+			remove(key);
+			missCount.incrementAndGet();
+			return null;
+		}
+		hitCount.incrementAndGet();
+		return entry.value;
+	}
+
+	// ignored if one of the tables was invalidated after the version was taken
+	public synchronized void put(String key, Collection<String> tables, Object value, long versionBeforeRead) {
+		for (String table : tables) {
+			Long invalidatedVersion = invalidatedVersions.get(table);
+			if (invalidatedVersion != null && invalidatedVersion > versionBeforeRead) {
+				return;
+			}
+		}
+		remove(key);
+		entries.put(key, new CacheEntry(value, new HashSet<>(tables), System.currentTimeMillis() + ttlMillis));
+		for (String table : tables) {
+			keysByTable.computeIfAbsent(table, x -> new HashSet<>()).add(key);
+		}
+		Iterator<Map.Entry<String, CacheEntry>> it = entries.entrySet().iterator();
+		while (entries.size() > maxEntries && it.hasNext()) {
+			Map.Entry<String, CacheEntry> eldest = it.next();
+			it.remove();
+			unindex(eldest.getKey(), eldest.getValue());
+			evictionCount.incrementAndGet();
+		}
+	}
+
+	public synchronized void invalidate(String table) {
+		invalidatedVersions.put(table, ++version);
+		Set<String> keys = keysByTable.remove(table);
+		if (keys == null) {
+			return;
+		}
+		for (String key : keys) {
+			CacheEntry entry = entries.remove(key);
+			if (entry != null) {
+				unindex(key, entry);
+				invalidationCount.incrementAndGet();
+			}
+		}
+	}
+
+	public synchronized void invalidateAll() {
+		++version;
+		for (String table : keysByTable.keySet()) {
+			invalidatedVersions.put(table, version);
+		}
+		invalidationCount.addAndGet(entries.size());
+		entries.clear();
+		keysByTable.clear();
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	public long getEvictionCount() {
+		return evictionCount.get();
+	}
+
+	public long getInvalidationCount() {
+		return invalidationCount.get();
+	}
+
+	private void remove(String key) {
+		CacheEntry entry = entries.remove(key);
+		if (entry != null) {
+			unindex(key, entry);
+		}
+	}
+
+	private void unindex(String key, CacheEntry entry) {
+		for (String table : entry.tables) {
+			Set<String> keys = keysByTable.get(table);
+			if (keys != null) {
+				keys.remove(key);
+				if (keys.isEmpty()) {
+					keysByTable.remove(table);
+				}
+			}
+		}
+	}
+
+	private static class CacheEntry {
+		final Object value;
+		final Set<String> tables;
+		final long expiresAt;
+
+		CacheEntry(Object value, Set<String> tables, long expiresAt) {
+			this.value = value;
+			this.tables = tables;
+			this.expiresAt = expiresAt;
+		}
+	}
+}
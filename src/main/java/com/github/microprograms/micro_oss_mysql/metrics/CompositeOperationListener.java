@@ -0,0 +1,69 @@
+package com.github.microprograms.micro_oss_mysql.metrics;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Forwards every callback to several listeners in order; one failing listener
+ * does not keep the others from being called.
+ */
+public class CompositeOperationListener implements OperationListener {
+	private static final Logger log = LoggerFactory.getLogger(CompositeOperationListener.class);
+
+	private final OperationListener[] listeners;
+
+	public CompositeOperationListener(OperationListener... listeners) {
+		this.listeners = listeners.clone();
+	}
+
+	public List<OperationListener> getListeners() {
+		return Arrays.asList(listeners);
+	}
+
+	@Override
+	public void onOperation(OperationEvent event) {
+		for (OperationListener x : listeners) {
+			try {
+				x.onOperation(event);
+			} catch (RuntimeException e) {
+				log.warn("", e);
+			}
+		}
+	}
+
+	@Override
+	public void onConnectionAcquire(long nanos, Throwable error) {
+		for (OperationListener x : listeners) {
+			try {
+				x.onConnectionAcquire(nanos, error);
+			} catch (RuntimeException e) {
+				log.warn("", e);
+			}
+		}
+	}
+
+	@Override
+	public void onTransaction(String transactionId, long nanos, Throwable error) {
+		for (OperationListener x : listeners) {
+			try {
+				x.onTransaction(transactionId, nanos, error);
+			} catch (RuntimeException e) {
+				log.warn("", e);
+			}
+		}
+	}
+
+	@Override
+	public void onTransactionRetry(String transactionId, int attempt, Throwable error) {
+		for (OperationListener x : listeners) {
+			try {
+				x.onTransactionRetry(transactionId, attempt, error);
+			} catch (RuntimeException e) {
+				log.warn("", e);
+			}
+		}
+	}
+}
@@ -0,0 +1,107 @@
+package com.github.microprograms.micro_oss_mysql.metrics;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps latency histograms in nanoseconds per operation type, plus counters of
+ * rows and errors, with no dependency beyond the JDK.
+ */
+public class HistogramOperationListener implements OperationListener {
+	private final Map<OperationType, LatencyHistogram> executionHistograms = new EnumMap<>(OperationType.class);
+	private final Map<OperationType, LongAdder> rowCounts = new EnumMap<>(OperationType.class);
+	private final Map<OperationType, LongAdder> errorCounts = new EnumMap<>(OperationType.class);
+	private final LatencyHistogram acquireHistogram = new LatencyHistogram();
+	private final LongAdder acquireErrorCount = new LongAdder();
+	private final LatencyHistogram transactionHistogram = new LatencyHistogram();
+	private final LongAdder transactionErrorCount = new LongAdder();
+	private final LongAdder transactionRetryCount = new LongAdder();
+
+	public HistogramOperationListener() {
+		// filled once, so concurrent reads need no locking
+		for (OperationType type : OperationType.values()) {
+			executionHistograms.put(type, new LatencyHistogram());
+			rowCounts.put(type, new LongAdder());
+			errorCounts.put(type, new LongAdder());
+		}
+	}
+
+	@Override
+	public void onOperation(OperationEvent event) {
+		executionHistograms.get(event.getType()).record(event.getExecutionNanos());
+		if (event.isSuccess()) {
+			if (event.getRows() > 0) {
+				rowCounts.get(event.getType()).add(event.getRows());
+			}
+		} else {
+			errorCounts.get(event.getType()).increment();
+		}
+	}
+
+	@Override
+	public void onConnectionAcquire(long nanos, Throwable error) {
+		acquireHistogram.record(nanos);
+		if (error != null) {
+			acquireErrorCount.increment();
+		}
+	}
+
+	@Override
+	public void onTransaction(String transactionId, long nanos, Throwable error) {
+		transactionHistogram.record(nanos);
+		if (error != null) {
+			transactionErrorCount.increment();
+		}
+	}
+
+	@Override
+	public void onTransactionRetry(String transactionId, int attempt, Throwable error) {
+		transactionRetryCount.increment();
+	}
+
+	public LatencyHistogram getExecutionHistogram(OperationType type) {
+		return executionHistograms.get(type);
+	}
+
+	public long getRowCount(OperationType type) {
+		return rowCounts.get(type).sum();
+	}
+
+	public long getErrorCount(OperationType type) {
+		return errorCounts.get(type).sum();
+	}
+
+	public LatencyHistogram getAcquireHistogram() {
+		return acquireHistogram;
+	}
+
+	public long getAcquireErrorCount() {
+		return acquireErrorCount.sum();
+	}
+
+	public LatencyHistogram getTransactionHistogram() {
+		return transactionHistogram;
+	}
+
+	public long getTransactionErrorCount() {
+		return transactionErrorCount.sum();
+	}
+
+	public long getTransactionRetryCount() {
+		return transactionRetryCount.sum();
+	}
+
+	public void reset() {
+		for (OperationType type : OperationType.values()) {
+			executionHistograms.get(type).reset();
+			rowCounts.get(type).reset();
+			errorCounts.get(type).reset();
+		}
+		acquireHistogram.reset();
+		acquireErrorCount.reset();
+		transactionHistogram.reset();
+		transactionErrorCount.reset();
+		transactionRetryCount.reset();
+	}
+}
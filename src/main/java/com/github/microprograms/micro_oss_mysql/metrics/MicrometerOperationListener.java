@@ -0,0 +1,78 @@
+package com.github.microprograms.micro_oss_mysql.metrics;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Publishes the provider callbacks to a Micrometer registry:
+ * <ul>
+ * <li>micro_oss.operation timer, tagged type, table and outcome</li>
+ * <li>micro_oss.operation.rows summary, tagged type and table</li>
+ * <li>micro_oss.connection.acquire timer, tagged outcome</li>
+ * <li>micro_oss.transaction timer, tagged outcome</li>
+ * <li>micro_oss.transaction.retries counter</li>
+ * </ul>
+ * micrometer-core is an optional dependency and must be on the classpath to
+ * use this class.
+ */
+public class MicrometerOperationListener implements OperationListener {
+	private final MeterRegistry registry;
+	// registering looks the meter up by name and tags, too slow for every event
+	private final ConcurrentMap<List<String>, Timer> timers = new ConcurrentHashMap<>();
+	private final ConcurrentMap<List<String>, DistributionSummary> summaries = new ConcurrentHashMap<>();
+	private final Counter transactionRetries;
+
+	public MicrometerOperationListener(MeterRegistry registry) {
+		this.registry = registry;
+		this.transactionRetries = registry.counter("micro_oss.transaction.retries");
+	}
+
+	@Override
+	public void onOperation(OperationEvent event) {
+		String type = event.getType().name();
+		String table = event.getTableName() == null ? "none" : event.getTableName();
+		String outcome = getOutcome(event.getError());
+		timers.computeIfAbsent(Arrays.asList("micro_oss.operation", type, table, outcome),
+				x -> Timer.builder("micro_oss.operation").tag("type", type).tag("table", table).tag("outcome", outcome)
+						.register(registry))
+				.record(event.getExecutionNanos(), TimeUnit.NANOSECONDS);
+		if (event.getRows() >= 0) {
+			summaries.computeIfAbsent(Arrays.asList(type, table),
+					x -> DistributionSummary.builder("micro_oss.operation.rows").tag("type", type).tag("table", table)
+							.register(registry))
+					.record(event.getRows());
+		}
+	}
+
+	@Override
+	public void onConnectionAcquire(long nanos, Throwable error) {
+		getTimer("micro_oss.connection.acquire", getOutcome(error)).record(nanos, TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public void onTransaction(String transactionId, long nanos, Throwable error) {
+		getTimer("micro_oss.transaction", getOutcome(error)).record(nanos, TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public void onTransactionRetry(String transactionId, int attempt, Throwable error) {
+		transactionRetries.increment();
+	}
+
+	private Timer getTimer(String name, String outcome) {
+		return timers.computeIfAbsent(Arrays.asList(name, outcome),
+				x -> Timer.builder(name).tag("outcome", outcome).register(registry));
+	}
+
+	private static String getOutcome(Throwable error) {
+		return error == null ? "success" : "error";
+	}
+}
@@ -0,0 +1,69 @@
+package com.github.microprograms.micro_oss_mysql.metrics;
+
+import java.util.List;
+
+/**
+ * One statement sent to the server. The sql is the statement as sent, so with
+ * prepared statements it is the shape shared by all executions and the values
+ * are in params; without them the values are inlined and params is empty.
+ */
+public class OperationEvent {
+	private final OperationType type;
+	private final String tableName;
+	private final String sql;
+	private final List<Object> params;
+	private final long executionNanos;
+	private final int rows;
+	private final Throwable error;
+
+	public OperationEvent(OperationType type, String tableName, String sql, List<Object> params, long executionNanos,
+			int rows, Throwable error) {
+		this.type = type;
+		this.tableName = tableName;
+		this.sql = sql;
+		this.params = params;
+		this.executionNanos = executionNanos;
+		this.rows = rows;
+		this.error = error;
+	}
+
+	public OperationType getType() {
+		return type;
+	}
+
+	// with the table prefix applied, null when unknown
+	public String getTableName() {
+		return tableName;
+	}
+
+	public String getSql() {
+		return sql;
+	}
+
+	public List<Object> getParams() {
+		return params;
+	}
+
+	public long getExecutionNanos() {
+		return executionNanos;
+	}
+
+	// rows affected or returned, -1 when unknown (cursors) or on error
+	public int getRows() {
+		return rows;
+	}
+
+	public Throwable getError() {
+		return error;
+	}
+
+	public boolean isSuccess() {
+		return error == null;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s %s %sms rows=%s%s", type, sql, executionNanos / 1000000, rows,
+				error == null ? "" : " error=" + error);
+	}
+}
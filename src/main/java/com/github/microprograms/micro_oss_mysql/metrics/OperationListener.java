@@ -0,0 +1,26 @@
+package com.github.microprograms.micro_oss_mysql.metrics;
+
+/**
+ * Called by the providers around every statement, connection checkout and
+ * transaction. Callbacks run on the calling thread and must be fast; an
+ * exception thrown by a listener is logged and does not fail the operation.
+ * When no listener is set the providers do not even read the clock.
+ */
+public interface OperationListener {
+
+	default void onOperation(OperationEvent event) {
+	}
+
+	// error is null when a connection was obtained
+	default void onConnectionAcquire(long nanos, Throwable error) {
+	}
+
+	// every transaction that commits on its own: the outermost ones and requiresNew inner ones, not nested or
+	// join inner ones; after commit or rollback, error is null on commit
+	default void onTransaction(String transactionId, long nanos, Throwable error) {
+	}
+
+	// a failed transaction is about to be replayed, attempt counts from 1
+	default void onTransactionRetry(String transactionId, int attempt, Throwable error) {
+	}
+}
@@ -0,0 +1,5 @@
+package com.github.microprograms.micro_oss_mysql.metrics;
+
+public enum OperationType {
+	createTable, alterTable, dropTable, insert, upsert, bulkLoad, update, delete, queryCount, query, cursor, pipeline, other
+}
@@ -0,0 +1,74 @@
+package com.github.microprograms.micro_oss_mysql.metrics;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A query that ran longer than the threshold of a {@link SlowQueryListener}.
+ * String, date, numeric and hex literals in inline SQL are replaced by ?, and
+ * bound parameters are kept as their type only. The EXPLAIN rows are filled
+ * in asynchronously when the query was sampled.
+ */
+public class SlowQuery {
+	private final long timestamp;
+	private final OperationType type;
+	private final String tableName;
+	private final String sql;
+	private final List<String> params;
+	private final long executionNanos;
+	private final int rows;
+	private volatile List<Map<String, Object>> explain;
+
+	public SlowQuery(long timestamp, OperationType type, String tableName, String sql, List<String> params,
+			long executionNanos, int rows) {
+		this.timestamp = timestamp;
+		this.type = type;
+		this.tableName = tableName;
+		this.sql = sql;
+		this.params = params;
+		this.executionNanos = executionNanos;
+		this.rows = rows;
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public OperationType getType() {
+		return type;
+	}
+
+	public String getTableName() {
+		return tableName;
+	}
+
+	public String getSql() {
+		return sql;
+	}
+
+	public List<String> getParams() {
+		return params;
+	}
+
+	public long getExecutionNanos() {
+		return executionNanos;
+	}
+
+	public int getRows() {
+		return rows;
+	}
+
+	// null unless EXPLAIN was sampled for this query and has completed
+	public List<Map<String, Object>> getExplain() {
+		return explain;
+	}
+
+	void setExplain(List<Map<String, Object>> explain) {
+		this.explain = explain;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%sms rows=%s %s %s", executionNanos / 1000000, rows, sql, params);
+	}
+}
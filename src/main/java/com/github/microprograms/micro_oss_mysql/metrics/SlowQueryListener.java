@@ -0,0 +1,213 @@
+package com.github.microprograms.micro_oss_mysql.metrics;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.regex.Pattern;
+
+import javax.sql.DataSource;
+
+import com.github.microprograms.micro_oss_mysql.utils.MysqlUtils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records query, queryCount and cursor statements slower than thresholdMillis
+ * in a ring buffer of the last capacity entries, and keeps totals per SQL
+ * shape for a top-N view. String, date and numeric literals are replaced by
+ * ?, so no values are stored and an inline statement has the same shape as
+ * its bound form. A sampled, rate-limited subset is explained on a
+ * background thread with a connection of explainDataSource, never the one the
+ * query ran on; pass null to turn EXPLAIN off. Both are logged at DEBUG only.
+ */
+public class SlowQueryListener implements OperationListener, AutoCloseable {
+	private static final Logger log = LoggerFactory.getLogger(SlowQueryListener.class);
+	// a string or date literal, a hex literal, or a number that is not part of an identifier
+	private static final Pattern LITERAL = Pattern.compile(
+			"(?:\\b(?:date|time|timestamp)\\s*)?'(?:[^'\\\\]|''|\\\\.)*'|\\b0x[0-9a-f]+\\b"
+					+ "|(?<![\\w`.])-?\\d+(?:\\.\\d+)?(?:e[-+]?\\d+)?(?![\\w`])",
+			Pattern.CASE_INSENSITIVE);
+
+	private final DataSource explainDataSource;
+	private final long thresholdNanos;
+	private final AtomicReferenceArray<SlowQuery> ring;
+	private final AtomicLong ringIndex = new AtomicLong();
+	private final Map<String, SlowQueryStats> statsBySql = new ConcurrentHashMap<>();
+	private final ExecutorService explainExecutor;
+	private final AtomicLong nextExplainMillis = new AtomicLong();
+	private int maxSqlShapes = 1000;
+	private double explainSampleRate = 0.1;
+	private long explainIntervalMillis = 10000;
+
+	public SlowQueryListener(DataSource explainDataSource, long thresholdMillis, int capacity) {
+		this.explainDataSource = explainDataSource;
+		this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+		this.ring = new AtomicReferenceArray<>(capacity);
+		// one EXPLAIN at a time, the rest are dropped
+		this.explainExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(1),
+				r -> {
+					Thread thread = new Thread(r, "micro-oss-explain");
+					thread.setDaemon(true);
+					return thread;
+				}, new ThreadPoolExecutor.DiscardPolicy());
+	}
+
+	public int getMaxSqlShapes() {
+		return maxSqlShapes;
+	}
+
+	// statements of new shapes are not added to the totals once this many are tracked
+	public void setMaxSqlShapes(int maxSqlShapes) {
+		this.maxSqlShapes = maxSqlShapes;
+	}
+
+	public double getExplainSampleRate() {
+		return explainSampleRate;
+	}
+
+	public void setExplainSampleRate(double explainSampleRate) {
+		this.explainSampleRate = explainSampleRate;
+	}
+
+	public long getExplainIntervalMillis() {
+		return explainIntervalMillis;
+	}
+
+	// at most one EXPLAIN per interval
+	public void setExplainIntervalMillis(long explainIntervalMillis) {
+		this.explainIntervalMillis = explainIntervalMillis;
+	}
+
+	@Override
+	public void onOperation(OperationEvent event) {
+		if (event.getExecutionNanos() < thresholdNanos || !event.isSuccess() || !isQuery(event.getType())) {
+			return;
+		}
+		String sql = normalizeSql(event.getSql());
+		List<String> params = new ArrayList<>(event.getParams().size());
+		for (Object x : event.getParams()) {
+			params.add(x == null ? "null" : "<" + x.getClass().getSimpleName() + ">");
+		}
+		SlowQuery slowQuery = new SlowQuery(System.currentTimeMillis(), event.getType(), event.getTableName(), sql,
+				params, event.getExecutionNanos(), event.getRows());
+		ring.set((int) (ringIndex.getAndIncrement() % ring.length()), slowQuery);
+		SlowQueryStats stats = statsBySql.get(sql);
+		if (stats == null && statsBySql.size() < maxSqlShapes) {
+			stats = statsBySql.computeIfAbsent(sql, SlowQueryStats::new);
+		}
+		if (stats != null) {
+			stats.record(event.getExecutionNanos());
+		}
+		// the ring buffer is the record, a log line per slow query would flood INFO under load
+		log.debug("slow query> {}", slowQuery);
+		if (shouldExplain()) {
+			String originalSql = event.getSql();
+			List<Object> originalParams = event.getParams();
+			try {
+				explainExecutor.execute(() -> explain(slowQuery, originalSql, originalParams));
+			} catch (RejectedExecutionException e) {
+				// closed
+			}
+		}
+	}
+
+	/**
+	 * The recorded slow queries, newest first.
+	 */
+	public List<SlowQuery> getSlowQueries() {
+		List<SlowQuery> list = new ArrayList<>();
+		long end = ringIndex.get();
+		for (long i = end - 1; i >= 0 && i >= end - ring.length(); i--) {
+			SlowQuery x = ring.get((int) (i % ring.length()));
+			if (x != null) {
+				list.add(x);
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * The n SQL shapes with the highest total slow execution time.
+	 */
+	public List<SlowQueryStats> getTopByTotalTime(int n) {
+		// the totals keep moving, so sort on a snapshot
+		Map<SlowQueryStats, Long> totals = new HashMap<>();
+		for (SlowQueryStats x : statsBySql.values()) {
+			totals.put(x, x.getTotalNanos());
+		}
+		List<SlowQueryStats> list = new ArrayList<>(totals.keySet());
+		list.sort((a, b) -> Long.compare(totals.get(b), totals.get(a)));
+		return list.size() > n ? new ArrayList<>(list.subList(0, n)) : list;
+	}
+
+	public void clear() {
+		for (int i = 0; i < ring.length(); i++) {
+			ring.set(i, null);
+		}
+		statsBySql.clear();
+	}
+
+	@Override
+	public void close() {
+		explainExecutor.shutdownNow();
+	}
+
+	static String normalizeSql(String sql) {
+		return LITERAL.matcher(sql).replaceAll("?");
+	}
+
+	private static boolean isQuery(OperationType type) {
+		return type == OperationType.query || type == OperationType.queryCount || type == OperationType.cursor;
+	}
+
+	private boolean shouldExplain() {
+		if (explainDataSource == null || ThreadLocalRandom.current().nextDouble() >= explainSampleRate) {
+			return false;
+		}
+		long now = System.currentTimeMillis();
+		long next = nextExplainMillis.get();
+		return now >= next && nextExplainMillis.compareAndSet(next, now + explainIntervalMillis);
+	}
+
+	private void explain(SlowQuery slowQuery, String sql, List<Object> params) {
+		try (Connection conn = explainDataSource.getConnection();
+				PreparedStatement ps = conn.prepareStatement("EXPLAIN " + sql)) {
+			for (int i = 0; i < params.size(); i++) {
+				ps.setObject(i + 1, params.get(i));
+			}
+			List<Map<String, Object>> rows = new ArrayList<>();
+			try (ResultSet rs = ps.executeQuery()) {
+				ResultSetMetaData rsMetaData = rs.getMetaData();
+				String[] columnLabels = MysqlUtils.getColumnLabels(rsMetaData);
+				while (rs.next()) {
+					Map<String, Object> row = new LinkedHashMap<>();
+					for (int i = 0; i < columnLabels.length; i++) {
+						row.put(columnLabels[i], rs.getObject(i + 1));
+					}
+					rows.add(row);
+				}
+			}
+			slowQuery.setExplain(Collections.unmodifiableList(rows));
+			log.debug("slow query explain> {} {}", slowQuery.getSql(), rows);
+		} catch (Exception e) {
+			log.warn("explain failed: " + slowQuery.getSql(), e);
+		}
+	}
+}
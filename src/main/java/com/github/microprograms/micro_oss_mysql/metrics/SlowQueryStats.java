@@ -0,0 +1,48 @@
+package com.github.microprograms.micro_oss_mysql.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Totals of the slow executions of one SQL shape.
+ */
+public class SlowQueryStats {
+	private final String sql;
+	private final LongAdder count = new LongAdder();
+	private final LongAdder totalNanos = new LongAdder();
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	public SlowQueryStats(String sql) {
+		this.sql = sql;
+	}
+
+	void record(long nanos) {
+		count.increment();
+		totalNanos.add(nanos);
+		long current;
+		while (nanos > (current = maxNanos.get()) && !maxNanos.compareAndSet(current, nanos)) {
+		}
+	}
+
+	public String getSql() {
+		return sql;
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public long getTotalNanos() {
+		return totalNanos.sum();
+	}
+
+	public long getMaxNanos() {
+		return maxNanos.get();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s x%s total=%sms max=%sms", sql, getCount(), getTotalNanos() / 1000000,
+				getMaxNanos() / 1000000);
+	}
+}
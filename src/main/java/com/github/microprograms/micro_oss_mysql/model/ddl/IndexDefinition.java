@@ -0,0 +1,74 @@
+package com.github.microprograms.micro_oss_mysql.model.ddl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * A secondary index over one or more columns; the column order of a composite
+ * index should follow the Condition keys first and the Sort fields after them.
+ */
+public class IndexDefinition implements TableElementDefinition {
+	private String name;
+	private TypeEnum type;
+	private List<String> fieldNames;
+
+	public IndexDefinition(String name, TypeEnum type, List<String> fieldNames) {
+		this.name = name;
+		this.type = type;
+		this.fieldNames = fieldNames;
+	}
+
+	public static IndexDefinition index(String name, String... fieldNames) {
+		return new IndexDefinition(name, TypeEnum.index, new ArrayList<>(Arrays.asList(fieldNames)));
+	}
+
+	public static IndexDefinition unique(String name, String... fieldNames) {
+		return new IndexDefinition(name, TypeEnum.unique, new ArrayList<>(Arrays.asList(fieldNames)));
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public TypeEnum getType() {
+		return type;
+	}
+
+	public void setType(TypeEnum type) {
+		this.type = type;
+	}
+
+	public List<String> getFieldNames() {
+		return fieldNames;
+	}
+
+	public void setFieldNames(List<String> fieldNames) {
+		this.fieldNames = fieldNames;
+	}
+
+	@Override
+	public String toText() {
+		List<String> sqlFields = new ArrayList<>();
+		for (String x : fieldNames) {
+			sqlFields.add(String.format("`%s`", x));
+		}
+		return String.format("%s `%s`(%s)", type == TypeEnum.unique ? "UNIQUE INDEX" : "INDEX", name,
+				StringUtils.join(sqlFields, ","));
+	}
+
+	@Override
+	public String toString() {
+		return toText();
+	}
+
+	public enum TypeEnum {
+		index, unique
+	}
+}
@@ -0,0 +1,46 @@
+package com.github.microprograms.micro_oss_mysql.model.ddl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * MySQL specific additions to a TableDefinition: varchar lengths for
+ * string_type fields, which are text otherwise and can't be indexed without a
+ * prefix, and the secondary indexes of the table.
+ */
+public class MysqlTableDefinition {
+	private Map<String, Integer> varcharLengths = new HashMap<>();
+	private List<IndexDefinition> indexes = new ArrayList<>();
+
+	public MysqlTableDefinition varchar(String fieldName, int length) {
+		varcharLengths.put(fieldName, length);
+		return this;
+	}
+
+	public MysqlTableDefinition index(IndexDefinition index) {
+		indexes.add(index);
+		return this;
+	}
+
+	public Integer getVarcharLength(String fieldName) {
+		return varcharLengths.get(fieldName);
+	}
+
+	public Map<String, Integer> getVarcharLengths() {
+		return varcharLengths;
+	}
+
+	public void setVarcharLengths(Map<String, Integer> varcharLengths) {
+		this.varcharLengths = varcharLengths;
+	}
+
+	public List<IndexDefinition> getIndexes() {
+		return indexes;
+	}
+
+	public void setIndexes(List<IndexDefinition> indexes) {
+		this.indexes = indexes;
+	}
+}
@@ -3,6 +3,7 @@ package com.github.microprograms.micro_oss_mysql.model.ddl;
 import org.apache.commons.lang3.StringUtils;
 
 import com.github.microprograms.micro_oss_core.model.FieldDefinition.FieldTypeEnum;
+import com.github.microprograms.micro_oss_mysql.utils.MysqlUtils;
 
 public class TableColumnDefinition implements TableElementDefinition {
 	private String name;
@@ -16,6 +17,14 @@ public class TableColumnDefinition implements TableElementDefinition {
 	}
 
 	public static String getMysqlDataType(FieldTypeEnum fieldType, boolean isPrimaryKey) {
+		return getMysqlDataType(fieldType, isPrimaryKey, null);
+	}
+
+	// varcharLength: sizes a string_type column, null keeps the default
+	public static String getMysqlDataType(FieldTypeEnum fieldType, boolean isPrimaryKey, Integer varcharLength) {
+		if (fieldType == FieldTypeEnum.string_type && varcharLength != null) {
+			return String.format("varchar(%s)", varcharLength);
+		}
 		switch (fieldType) {
 		case int_type:
 			return "int";
@@ -37,7 +46,7 @@ public class TableColumnDefinition implements TableElementDefinition {
 	@Override
 	public String toText() {
 		return String.format("`%s` %s COMMENT '%s'", name, type,
-				StringUtils.isBlank(comment) ? "" : comment.replaceAll("'", "''"));
+				StringUtils.isBlank(comment) ? "" : MysqlUtils.escape(comment));
 	}
 
 	@Override
@@ -0,0 +1,35 @@
+package com.github.microprograms.micro_oss_mysql.model.dml;
+
+import java.util.List;
+
+import com.github.microprograms.micro_oss_core.model.Entity;
+
+public class InsertBatchCommand {
+	private List<Entity> entities;
+	private int maxRowsPerChunk;
+
+	public InsertBatchCommand(List<Entity> entities) {
+		this.entities = entities;
+	}
+
+	public InsertBatchCommand(List<Entity> entities, int maxRowsPerChunk) {
+		this.entities = entities;
+		this.maxRowsPerChunk = maxRowsPerChunk;
+	}
+
+	public List<Entity> getEntities() {
+		return entities;
+	}
+
+	public void setEntities(List<Entity> entities) {
+		this.entities = entities;
+	}
+
+	public int getMaxRowsPerChunk() {
+		return maxRowsPerChunk;
+	}
+
+	public void setMaxRowsPerChunk(int maxRowsPerChunk) {
+		this.maxRowsPerChunk = maxRowsPerChunk;
+	}
+}
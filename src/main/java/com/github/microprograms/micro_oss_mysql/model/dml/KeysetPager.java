@@ -0,0 +1,31 @@
+package com.github.microprograms.micro_oss_mysql.model.dml;
+
+public class KeysetPager {
+	private int pageSize;
+	private String token;
+
+	public KeysetPager(int pageSize) {
+		this.pageSize = pageSize;
+	}
+
+	public KeysetPager(int pageSize, String token) {
+		this.pageSize = pageSize;
+		this.token = token;
+	}
+
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	public void setPageSize(int pageSize) {
+		this.pageSize = pageSize;
+	}
+
+	public String getToken() {
+		return token;
+	}
+
+	public void setToken(String token) {
+		this.token = token;
+	}
+}
@@ -0,0 +1,67 @@
+package com.github.microprograms.micro_oss_mysql.model.dml;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.github.microprograms.micro_oss_core.model.dml.query.SelectCommand;
+import com.github.microprograms.micro_oss_core.model.dml.query.SelectCountCommand;
+import com.github.microprograms.micro_oss_core.model.dml.update.DeleteCommand;
+import com.github.microprograms.micro_oss_core.model.dml.update.InsertCommand;
+import com.github.microprograms.micro_oss_core.model.dml.update.UpdateCommand;
+
+/**
+ * Independent commands run on one connection. The results come back in the
+ * order the commands were added: a QueryResult for a SelectCommand, an Integer
+ * count for a SelectCountCommand and the affected row count for the rest.
+ * With multiQueries the commands are sent as one multi-statement round trip,
+ * which needs allowMultiQueries=true on the connection; otherwise consecutive
+ * writes go as one JDBC batch and queries one by one.
+ */
+public class PipelineCommand {
+	private List<Object> commands = new ArrayList<>();
+	private boolean multiQueries;
+
+	public PipelineCommand() {
+	}
+
+	public PipelineCommand(boolean multiQueries) {
+		this.multiQueries = multiQueries;
+	}
+
+	public PipelineCommand select(SelectCommand command) {
+		commands.add(command);
+		return this;
+	}
+
+	public PipelineCommand selectCount(SelectCountCommand command) {
+		commands.add(command);
+		return this;
+	}
+
+	public PipelineCommand insert(InsertCommand command) {
+		commands.add(command);
+		return this;
+	}
+
+	public PipelineCommand update(UpdateCommand command) {
+		commands.add(command);
+		return this;
+	}
+
+	public PipelineCommand delete(DeleteCommand command) {
+		commands.add(command);
+		return this;
+	}
+
+	public List<Object> getCommands() {
+		return commands;
+	}
+
+	public boolean isMultiQueries() {
+		return multiQueries;
+	}
+
+	public void setMultiQueries(boolean multiQueries) {
+		this.multiQueries = multiQueries;
+	}
+}
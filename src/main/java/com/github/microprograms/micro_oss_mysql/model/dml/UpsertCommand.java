@@ -0,0 +1,72 @@
+package com.github.microprograms.micro_oss_mysql.model.dml;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.github.microprograms.micro_oss_core.model.Entity;
+import com.github.microprograms.micro_oss_core.model.FieldDefinition;
+import com.github.microprograms.micro_oss_core.model.TableDefinition;
+
+public class UpsertCommand {
+	private List<Entity> entities;
+	private List<String> primaryKeyFieldNames;
+	// null: update every field that is not part of the primary key
+	private List<String> updateFieldNames;
+	private int maxRowsPerChunk;
+
+	public UpsertCommand(List<Entity> entities, List<String> primaryKeyFieldNames) {
+		this(entities, primaryKeyFieldNames, null);
+	}
+
+	public UpsertCommand(List<Entity> entities, List<String> primaryKeyFieldNames, List<String> updateFieldNames) {
+		this.entities = entities;
+		this.primaryKeyFieldNames = primaryKeyFieldNames;
+		this.updateFieldNames = updateFieldNames;
+	}
+
+	public UpsertCommand(List<Entity> entities, TableDefinition tableDefinition, List<String> updateFieldNames) {
+		this(entities, getPrimaryKeyFieldNames(tableDefinition), updateFieldNames);
+	}
+
+	public static List<String> getPrimaryKeyFieldNames(TableDefinition tableDefinition) {
+		List<String> primaryKeyFieldNames = new ArrayList<>();
+		for (FieldDefinition fieldDefinition : tableDefinition.getFields()) {
+			if (fieldDefinition.getPrimaryKey() > 0) {
+				primaryKeyFieldNames.add(fieldDefinition.getName());
+			}
+		}
+		return primaryKeyFieldNames;
+	}
+
+	public List<Entity> getEntities() {
+		return entities;
+	}
+
+	public void setEntities(List<Entity> entities) {
+		this.entities = entities;
+	}
+
+	public List<String> getPrimaryKeyFieldNames() {
+		return primaryKeyFieldNames;
+	}
+
+	public void setPrimaryKeyFieldNames(List<String> primaryKeyFieldNames) {
+		this.primaryKeyFieldNames = primaryKeyFieldNames;
+	}
+
+	public List<String> getUpdateFieldNames() {
+		return updateFieldNames;
+	}
+
+	public void setUpdateFieldNames(List<String> updateFieldNames) {
+		this.updateFieldNames = updateFieldNames;
+	}
+
+	public int getMaxRowsPerChunk() {
+		return maxRowsPerChunk;
+	}
+
+	public void setMaxRowsPerChunk(int maxRowsPerChunk) {
+		this.maxRowsPerChunk = maxRowsPerChunk;
+	}
+}
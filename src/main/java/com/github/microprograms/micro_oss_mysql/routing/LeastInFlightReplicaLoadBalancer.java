@@ -0,0 +1,26 @@
+package com.github.microprograms.micro_oss_mysql.routing;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+public class LeastInFlightReplicaLoadBalancer implements ReplicaLoadBalancer {
+	private final AtomicInteger counter = new AtomicInteger();
+
+	@Override
+	public int select(AtomicIntegerArray inFlight) {
+		int length = inFlight.length();
+		// rotate the starting point so that ties are spread across replicas
+		int start = Math.floorMod(counter.getAndIncrement(), length);
+		int selected = start;
+		int min = Integer.MAX_VALUE;
+		for (int i = 0; i < length; i++) {
+			int index = (start + i) % length;
+			int current = inFlight.get(index);
+			if (current < min) {
+				min = current;
+				selected = index;
+			}
+		}
+		return selected;
+	}
+}
@@ -0,0 +1,124 @@
+package com.github.microprograms.micro_oss_mysql.routing;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import javax.sql.DataSource;
+
+import com.github.microprograms.micro_oss_core.MicroOssConfig;
+import com.github.microprograms.micro_oss_core.Transaction;
+import com.github.microprograms.micro_oss_core.exception.MicroOssException;
+import com.github.microprograms.micro_oss_mysql.MysqlMicroOssProvider;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends reads to replicas and writes, DDL and transactions to the primary.
+ * With a read-your-writes window, a thread that has just written keeps
+ * reading from the primary until the window expires.
+ */
+public class ReadWriteSplittingMysqlMicroOssProvider extends MysqlMicroOssProvider {
+	private static final Logger log = LoggerFactory.getLogger(ReadWriteSplittingMysqlMicroOssProvider.class);
+
+	private final List<DataSource> replicas;
+	private final AtomicIntegerArray inFlight;
+	private final ReplicaLoadBalancer loadBalancer;
+	private final ThreadLocal<Long> pinnedUntil = new ThreadLocal<>();
+	private long readYourWritesMillis;
+
+	public ReadWriteSplittingMysqlMicroOssProvider(DataSource primary, List<DataSource> replicas,
+			MicroOssConfig config) {
+		this(primary, replicas, config, new RoundRobinReplicaLoadBalancer());
+	}
+
+	public ReadWriteSplittingMysqlMicroOssProvider(DataSource primary, List<DataSource> replicas,
+			MicroOssConfig config, ReplicaLoadBalancer loadBalancer) {
+		super(primary, config);
+		this.replicas = new ArrayList<>(replicas);
+		this.inFlight = new AtomicIntegerArray(replicas.size());
+		this.loadBalancer = loadBalancer;
+	}
+
+	public List<DataSource> getReplicas() {
+		return replicas;
+	}
+
+	public long getReadYourWritesMillis() {
+		return readYourWritesMillis;
+	}
+
+	public void setReadYourWritesMillis(long readYourWritesMillis) {
+		this.readYourWritesMillis = readYourWritesMillis;
+	}
+
+	public int getInFlight(int replicaIndex) {
+		return inFlight.get(replicaIndex);
+	}
+
+	@Override
+	protected Connection getReadConnection() throws SQLException {
+		if (replicas.isEmpty() || isPinnedToPrimary()) {
+			return _getConnection(getDataSource());
+		}
+		int index = loadBalancer.select(inFlight);
+		try {
+			return track(index, _getConnection(replicas.get(index)));
+		} catch (SQLException e) {
+			log.warn("replica {} unavailable, reading from primary", index, e);
+			return _getConnection(getDataSource());
+		}
+	}
+
+	@Override
+	protected Connection getWriteConnection() throws SQLException {
+		pinToPrimary();
+		return super.getWriteConnection();
+	}
+
+	@Override
+	public void execute(Transaction transaction) throws MicroOssException {
+		pinToPrimary();
+		super.execute(transaction);
+	}
+
+	private boolean isPinnedToPrimary() {
+		Long until = pinnedUntil.get();
+		if (until == null) {
+			return false;
+		}
+		if (System.currentTimeMillis() < until) {
+			return true;
+		}
+		pinnedUntil.remove();
+		return false;
+	}
+
+	private void pinToPrimary() {
+		if (readYourWritesMillis > 0) {
+			pinnedUntil.set(System.currentTimeMillis() + readYourWritesMillis);
+		}
+	}
+
+	private Connection track(int index, Connection conn) {
+		inFlight.incrementAndGet(index);
+		AtomicBoolean released = new AtomicBoolean();
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class },
+				(proxy, method, args) -> {
+					if ("close".equals(method.getName()) && released.compareAndSet(false, true)) {
+						inFlight.decrementAndGet(index);
+					}
+					try {
+						return method.invoke(conn, args);
+					} catch (InvocationTargetException e) {
+						throw e.getTargetException();
+					}
+				});
+	}
+}
@@ -0,0 +1,9 @@
+package com.github.microprograms.micro_oss_mysql.routing;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+public interface ReplicaLoadBalancer {
+
+	// inFlight holds the number of connections currently checked out per replica
+	int select(AtomicIntegerArray inFlight);
+}
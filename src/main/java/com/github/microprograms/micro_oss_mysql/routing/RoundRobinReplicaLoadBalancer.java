@@ -0,0 +1,13 @@
+package com.github.microprograms.micro_oss_mysql.routing;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+public class RoundRobinReplicaLoadBalancer implements ReplicaLoadBalancer {
+	private final AtomicInteger counter = new AtomicInteger();
+
+	@Override
+	public int select(AtomicIntegerArray inFlight) {
+		return Math.floorMod(counter.getAndIncrement(), inFlight.length());
+	}
+}
@@ -0,0 +1,18 @@
+package com.github.microprograms.micro_oss_mysql.sharding;
+
+public class HashShardingStrategy implements ShardingStrategy {
+
+	@Override
+	public int getShard(Object shardingKeyValue, int shardCount) {
+		if (shardingKeyValue == null) {
+			throw new RuntimeException("Sharding key value must not be null");
+		}
+		int hash;
+		if (shardingKeyValue instanceof Number) {
+			hash = Long.hashCode(((Number) shardingKeyValue).longValue());
+		} else {
+			hash = shardingKeyValue.toString().hashCode();
+		}
+		return Math.floorMod(hash, shardCount);
+	}
+}
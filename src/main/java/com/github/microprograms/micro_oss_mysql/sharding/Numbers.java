@@ -0,0 +1,39 @@
+package com.github.microprograms.micro_oss_mysql.sharding;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+// compares numbers of different boxed types, as MySQL compares the column values
+final class Numbers {
+
+	private Numbers() {
+	}
+
+	static int compare(Number a, Number b) {
+		if (isIntegral(a) && isIntegral(b)) {
+			return Long.compare(a.longValue(), b.longValue());
+		}
+		if (isFloating(a) || isFloating(b)) {
+			return Double.compare(a.doubleValue(), b.doubleValue());
+		}
+		return toBigDecimal(a).compareTo(toBigDecimal(b));
+	}
+
+	private static boolean isIntegral(Number x) {
+		return x instanceof Long || x instanceof Integer || x instanceof Short || x instanceof Byte;
+	}
+
+	private static boolean isFloating(Number x) {
+		return x instanceof Double || x instanceof Float;
+	}
+
+	private static BigDecimal toBigDecimal(Number x) {
+		if (x instanceof BigDecimal) {
+			return (BigDecimal) x;
+		}
+		if (x instanceof BigInteger) {
+			return new BigDecimal((BigInteger) x);
+		}
+		return isIntegral(x) ? BigDecimal.valueOf(x.longValue()) : new BigDecimal(x.toString());
+	}
+}
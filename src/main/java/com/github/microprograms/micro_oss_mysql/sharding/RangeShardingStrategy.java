@@ -0,0 +1,42 @@
+package com.github.microprograms.micro_oss_mysql.sharding;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shard i holds the keys below {@code upperBounds[i]}; the last shard holds
+ * everything else. Bounds must be sorted ascending. Numeric keys are compared
+ * by value, so Long bounds route Integer keys.
+ */
+public class RangeShardingStrategy implements ShardingStrategy {
+	private final List<Comparable<Object>> upperBounds;
+
+	@SuppressWarnings("unchecked")
+	public RangeShardingStrategy(List<? extends Comparable<?>> upperBounds) {
+		this.upperBounds = new ArrayList<>();
+		for (Comparable<?> x : upperBounds) {
+			this.upperBounds.add((Comparable<Object>) x);
+		}
+	}
+
+	@Override
+	public int getShard(Object shardingKeyValue, int shardCount) {
+		if (shardingKeyValue == null) {
+			throw new RuntimeException("Sharding key value must not be null");
+		}
+		for (int i = 0; i < upperBounds.size() && i < shardCount - 1; i++) {
+			if (compare(upperBounds.get(i), shardingKeyValue) > 0) {
+				return i;
+			}
+		}
+		return shardCount - 1;
+	}
+
+	private static int compare(Comparable<Object> bound, Object shardingKeyValue) {
+		if (bound instanceof Number && shardingKeyValue instanceof Number
+				&& bound.getClass() != shardingKeyValue.getClass()) {
+			return Numbers.compare((Number) bound, (Number) shardingKeyValue);
+		}
+		return bound.compareTo(shardingKeyValue);
+	}
+}
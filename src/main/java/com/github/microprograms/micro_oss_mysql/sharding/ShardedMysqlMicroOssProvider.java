@@ -0,0 +1,445 @@
+package com.github.microprograms.micro_oss_mysql.sharding;
+
+import java.sql.Connection;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.sql.DataSource;
+
+import com.github.microprograms.micro_oss_core.MicroOssConfig;
+import com.github.microprograms.micro_oss_core.MicroOssProvider;
+import com.github.microprograms.micro_oss_core.QueryResult;
+import com.github.microprograms.micro_oss_core.Transaction;
+import com.github.microprograms.micro_oss_core.exception.MicroOssException;
+import com.github.microprograms.micro_oss_core.model.Entity;
+import com.github.microprograms.micro_oss_core.model.Field;
+import com.github.microprograms.micro_oss_core.model.ddl.CreateTableCommand;
+import com.github.microprograms.micro_oss_core.model.ddl.DropTableCommand;
+import com.github.microprograms.micro_oss_core.model.dml.query.Condition;
+import com.github.microprograms.micro_oss_core.model.dml.query.Condition.ComplexCondition;
+import com.github.microprograms.micro_oss_core.model.dml.query.Condition.RawCondition;
+import com.github.microprograms.micro_oss_core.model.dml.query.PagerRequest;
+import com.github.microprograms.micro_oss_core.model.dml.query.SelectCommand;
+import com.github.microprograms.micro_oss_core.model.dml.query.SelectCountCommand;
+import com.github.microprograms.micro_oss_core.model.dml.query.Sort;
+import com.github.microprograms.micro_oss_core.model.dml.update.DeleteCommand;
+import com.github.microprograms.micro_oss_core.model.dml.update.InsertCommand;
+import com.github.microprograms.micro_oss_core.model.dml.update.UpdateCommand;
+import com.github.microprograms.micro_oss_mysql.RawMysqlMicroOssProvider;
+import com.github.microprograms.micro_oss_mysql.metrics.OperationType;
+import com.github.microprograms.micro_oss_mysql.utils.MysqlUtils;
+import com.github.microprograms.micro_oss_mysql.utils.SqlStatement;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Spreads one logical table over several MySQL instances. Writes are routed by
+ * the value of the sharding key; a Condition that pins the sharding key with
+ * "=" is served by a single shard, anything else fans out to every shard in
+ * parallel and the results are merged by the Sort list before the pager is
+ * applied. MySQL orders strings by the column collation, which Java cannot
+ * know: merging on a String sort field needs a Collator that matches it, see
+ * {@link #setCollator(Collator)}, and fails without one.
+ */
+public class ShardedMysqlMicroOssProvider extends RawMysqlMicroOssProvider
+		implements MicroOssProvider, AutoCloseable {
+
+	private final List<DataSource> shards;
+	private final String shardingKey;
+	private final ShardingStrategy shardingStrategy;
+	private final ExecutorService executor;
+	private final boolean ownsExecutor;
+	private volatile Collator collator;
+
+	public ShardedMysqlMicroOssProvider(List<DataSource> shards, String shardingKey,
+			ShardingStrategy shardingStrategy, MicroOssConfig config) {
+		this(shards, shardingKey, shardingStrategy, config, Executors.newFixedThreadPool(shards.size(), r -> {
+			Thread thread = new Thread(r, "micro-oss-shard");
+			thread.setDaemon(true);
+			return thread;
+		}), true);
+	}
+
+	public ShardedMysqlMicroOssProvider(List<DataSource> shards, String shardingKey,
+			ShardingStrategy shardingStrategy, MicroOssConfig config, ExecutorService executor) {
+		this(shards, shardingKey, shardingStrategy, config, executor, false);
+	}
+
+	private ShardedMysqlMicroOssProvider(List<DataSource> shards, String shardingKey,
+			ShardingStrategy shardingStrategy, MicroOssConfig config, ExecutorService executor,
+			boolean ownsExecutor) {
+		super(config);
+		this.shards = new ArrayList<>(shards);
+		this.shardingKey = shardingKey;
+		this.shardingStrategy = shardingStrategy;
+		this.executor = executor;
+		this.ownsExecutor = ownsExecutor;
+	}
+
+	public List<DataSource> getShards() {
+		return shards;
+	}
+
+	public String getShardingKey() {
+		return shardingKey;
+	}
+
+	public Collator getCollator() {
+		return collator;
+	}
+
+	// orders String sort fields when merging shard results, e.g. Collator.getInstance(Locale.ROOT)
+	public void setCollator(Collator collator) {
+		this.collator = collator;
+	}
+
+	public int getShard(Object shardingKeyValue) {
+		return shardingStrategy.getShard(shardingKeyValue, shards.size());
+	}
+
+	@Override
+	public void createTable(CreateTableCommand command) throws MicroOssException {
+		String tableName = command.getTableDefinition().getTableName();
+		command.getTableDefinition().setTableName(_getTableNameWithPrefix(tableName));
+		SqlStatement statement = new SqlStatement(MysqlUtils.buildSql(command));
+		String tableNameWithPrefix = command.getTableDefinition().getTableName();
+		executeOnAll(conn -> _executeUpdate(conn, OperationType.createTable, tableNameWithPrefix, statement));
+		_invalidate(tableName);
+	}
+
+	@Override
+	public void dropTable(DropTableCommand command) throws MicroOssException {
+		String tableName = command.getTableName();
+		command.setTableName(_getTableNameWithPrefix(tableName));
+		SqlStatement statement = new SqlStatement(MysqlUtils.buildSql(command));
+		executeOnAll(conn -> _executeUpdate(conn, OperationType.dropTable, command.getTableName(), statement));
+		_invalidate(tableName);
+	}
+
+	@Override
+	public int insertObject(InsertCommand command) throws MicroOssException {
+		int shard = getShard(getShardingKeyValue(command.getEntity()));
+		try (Connection conn = _getConnection(shards.get(shard))) {
+			return insertObject(conn, command);
+		} catch (Exception e) {
+			throw new MicroOssException(e);
+		}
+	}
+
+	@Override
+	public int insertObject(Object object) throws MicroOssException {
+		return insertObject(new InsertCommand(_buildEntity(object)));
+	}
+
+	@Override
+	public int updateObject(UpdateCommand command) throws MicroOssException {
+		String tableName = command.getTableName();
+		command.setTableName(_getTableNameWithPrefix(tableName));
+		SqlStatement statement = MysqlUtils.buildStatement(command, isUsePreparedStatement());
+		try {
+			return sum(executeOnShards(findShard(command.getWhere()),
+					conn -> _executeUpdate(conn, OperationType.update, command.getTableName(), statement)));
+		} finally {
+			_invalidate(tableName);
+		}
+	}
+
+	@Override
+	public int updateObject(Class<?> clz, List<Field> fields, Condition where) throws MicroOssException {
+		return updateObject(new UpdateCommand(_getTableName(clz), fields, where));
+	}
+
+	@Override
+	public int deleteObject(DeleteCommand command) throws MicroOssException {
+		String tableName = command.getTableName();
+		command.setTableName(_getTableNameWithPrefix(tableName));
+		SqlStatement statement = MysqlUtils.buildStatement(command, isUsePreparedStatement());
+		try {
+			return sum(executeOnShards(findShard(command.getWhere()),
+					conn -> _executeUpdate(conn, OperationType.delete, command.getTableName(), statement)));
+		} finally {
+			_invalidate(tableName);
+		}
+	}
+
+	@Override
+	public int deleteObject(Class<?> clz, Condition where) throws MicroOssException {
+		return deleteObject(new DeleteCommand(_getTableName(clz), where));
+	}
+
+	@Override
+	public int queryCount(SelectCountCommand command) throws MicroOssException {
+		_applyTableNamePrefix(command);
+		SqlStatement statement = MysqlUtils.buildStatement(command, isUsePreparedStatement());
+		String tableName = command.getTableName();
+		return sum(executeOnShards(findShard(command.getWhere()),
+				conn -> _executeQuery(conn, OperationType.queryCount, tableName, statement, rs -> {
+					rs.next();
+					return rs.getObject("count", Integer.class);
+				})));
+	}
+
+	@Override
+	public int queryCount(Class<?> clz, Condition where) throws MicroOssException {
+		return queryCount(new SelectCountCommand(_getTableName(clz), where));
+	}
+
+	@Override
+	public QueryResult<?> query(SelectCommand command) throws MicroOssException {
+		return new QueryResult<>(queryEntities(command));
+	}
+
+	@Override
+	public <T> QueryResult<T> query(Class<T> clz, Condition where) throws MicroOssException {
+		return query(clz, null, where, null, null);
+	}
+
+	@Override
+	public <T> QueryResult<T> query(Class<T> clz, Condition where, List<Sort> sorts) throws MicroOssException {
+		return query(clz, null, where, sorts, null);
+	}
+
+	@Override
+	public <T> QueryResult<T> query(Class<T> clz, Condition where, List<Sort> sorts, PagerRequest pager)
+			throws MicroOssException {
+		return query(clz, null, where, sorts, pager);
+	}
+
+	@Override
+	public <T> QueryResult<T> query(Class<T> clz, List<String> fieldNames, Condition where, List<Sort> sorts,
+			PagerRequest pager) throws MicroOssException {
+		// the merge compares the Sort fields of the rows
+		List<Entity> entities = queryEntities(
+				new SelectCommand(_getTableName(clz), _getFieldNames(clz, fieldNames, sorts), where, sorts, pager));
+		return new QueryResult<T>(entities).clz(clz);
+	}
+
+	/**
+	 * A transaction cannot span shards: callers must use
+	 * {@link #execute(Object, Transaction)} to pin it to the shard of a sharding
+	 * key. Only with a single shard does this run the transaction, on that shard.
+	 */
+	@Override
+	public void execute(Transaction transaction) throws MicroOssException {
+		if (shards.size() == 1) {
+			execute(shards.get(0), transaction);
+			return;
+		}
+		throw new MicroOssException(
+				new UnsupportedOperationException("Transactions must be pinned to one shard by a sharding key"));
+	}
+
+	public void execute(Object shardingKeyValue, Transaction transaction) throws MicroOssException {
+		execute(shards.get(getShard(shardingKeyValue)), transaction);
+	}
+
+	List<Entity> queryEntities(SelectCommand command) throws MicroOssException {
+		_applyTableNamePrefix(command);
+		String tableName = command.getTableName();
+		Integer shard = findShard(command.getWhere());
+		PagerRequest pager = command.getPager();
+		if (shard != null || shards.size() == 1) {
+			SqlStatement statement = MysqlUtils.buildStatement(command, isUsePreparedStatement());
+			return executeOnShards(shard == null ? Integer.valueOf(0) : shard,
+					conn -> _executeQuery(conn, OperationType.query, tableName, statement,
+							rs -> MysqlUtils.getEntityList(tableName, rs))).get(0);
+		}
+		// every shard returns its first (pageIndex + 1) * pageSize rows, the global page is cut after merging
+		SqlStatement statement = pager == null ? MysqlUtils.buildStatement(command, isUsePreparedStatement())
+				: MysqlUtils.buildStatement(command, (pager.getPageIndex() + 1) * pager.getPageSize(),
+						isUsePreparedStatement());
+		List<List<Entity>> results = executeOnShards(null,
+				conn -> _executeQuery(conn, OperationType.query, tableName, statement,
+						rs -> MysqlUtils.getEntityList(tableName, rs)));
+		List<Entity> merged = merge(results, command.getSorts());
+		if (pager == null) {
+			return merged;
+		}
+		int from = Math.min(merged.size(), pager.getPageIndex() * pager.getPageSize());
+		int to = Math.min(merged.size(), from + pager.getPageSize());
+		return new ArrayList<>(merged.subList(from, to));
+	}
+
+	private List<Entity> merge(List<List<Entity>> results, List<Sort> sorts) {
+		List<Entity> merged = new ArrayList<>();
+		if (sorts == null || sorts.isEmpty()) {
+			for (List<Entity> x : results) {
+				merged.addAll(x);
+			}
+			return merged;
+		}
+		Comparator<Entity> comparator = getComparator(sorts);
+		PriorityQueue<int[]> heads = new PriorityQueue<>(results.size(),
+				(a, b) -> comparator.compare(results.get(a[0]).get(a[1]), results.get(b[0]).get(b[1])));
+		for (int i = 0; i < results.size(); i++) {
+			if (!results.get(i).isEmpty()) {
+				heads.add(new int[] { i, 0 });
+			}
+		}
+		while (!heads.isEmpty()) {
+			int[] head = heads.poll();
+			List<Entity> result = results.get(head[0]);
+			merged.add(result.get(head[1]));
+			if (++head[1] < result.size()) {
+				heads.add(head);
+			}
+		}
+		return merged;
+	}
+
+	private Comparator<Entity> getComparator(List<Sort> sorts) {
+		Collator collator = this.collator;
+		List<String> labels = new ArrayList<>();
+		List<Boolean> descending = new ArrayList<>();
+		for (Sort x : sorts) {
+			labels.add(MysqlUtils.getColumnLabel(x.getFieldName()));
+			descending.add(MysqlUtils.isDescending(x));
+		}
+		return (a, b) -> {
+			for (int i = 0; i < labels.size(); i++) {
+				int result = compareValues(getValue(a, labels.get(i)), getValue(b, labels.get(i)), collator);
+				if (result != 0) {
+					return descending.get(i) ? -result : result;
+				}
+			}
+			return 0;
+		};
+	}
+
+	// NULL sorts first in ascending order, as in MySQL
+	@SuppressWarnings("unchecked")
+	private static int compareValues(Object a, Object b, Collator collator) {
+		if (a == b) {
+			return 0;
+		}
+		if (a == null) {
+			return -1;
+		}
+		if (b == null) {
+			return 1;
+		}
+		if (a instanceof Number && b instanceof Number && a.getClass() != b.getClass()) {
+			return Numbers.compare((Number) a, (Number) b);
+		}
+		if (a instanceof String) {
+			if (collator == null) {
+				throw new RuntimeException(
+						"Merging shards on a String sort field needs a Collator matching the column collation");
+			}
+			return collator.compare(a, b);
+		}
+		return ((Comparable<Object>) a).compareTo(b);
+	}
+
+	private static Object getValue(Entity entity, String label) {
+		for (Field x : entity.getFields()) {
+			if (label.equalsIgnoreCase(x.getName())) {
+				return x.getValue();
+			}
+		}
+		return null;
+	}
+
+	private Object getShardingKeyValue(Entity entity) {
+		for (Field x : entity.getFields()) {
+			if (shardingKey.equalsIgnoreCase(x.getName())) {
+				return x.getValue();
+			}
+		}
+		throw new RuntimeException(String.format("Entity has no sharding key %s", shardingKey));
+	}
+
+	// the shard pinned by a "shardingKey =" condition (possibly inside an AND), or null
+	private Integer findShard(Condition where) {
+		if (where == null || where instanceof RawCondition) {
+			return null;
+		}
+		if (where instanceof ComplexCondition) {
+			ComplexCondition complex = (ComplexCondition) where;
+			if (complex.getType() != ComplexCondition.TypeEnum.and || complex.getConditions() == null) {
+				return null;
+			}
+			for (Condition child : complex.getConditions()) {
+				Integer shard = findShard(child);
+				if (shard != null) {
+					return shard;
+				}
+			}
+			return null;
+		}
+		String key = StringUtils.remove(StringUtils.deleteWhitespace(where.getKey()), '`');
+		if (where.getValue() != null && key.equalsIgnoreCase(shardingKey + "=")) {
+			return getShard(where.getValue());
+		}
+		return null;
+	}
+
+	private interface ShardCall<R> {
+		R call(Connection conn) throws Exception;
+	}
+
+	private void executeOnAll(ShardCall<?> call) throws MicroOssException {
+		executeOnShards(null, call);
+	}
+
+	// runs on the given shard, or on every shard in parallel when shard is null
+	private <R> List<R> executeOnShards(Integer shard, ShardCall<R> call) throws MicroOssException {
+		if (shard != null) {
+			try (Connection conn = _getConnection(shards.get(shard))) {
+				return Collections.singletonList(call.call(conn));
+			} catch (Exception e) {
+				throw new MicroOssException(e);
+			}
+		}
+		List<Future<R>> futures = new ArrayList<>();
+		for (DataSource dataSource : shards) {
+			Callable<R> task = () -> {
+				try (Connection conn = _getConnection(dataSource)) {
+					return call.call(conn);
+				}
+			};
+			futures.add(executor.submit(task));
+		}
+		List<R> results = new ArrayList<>();
+		try {
+			for (Future<R> future : futures) {
+				results.add(future.get());
+			}
+		} catch (ExecutionException e) {
+			throw new MicroOssException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MicroOssException(e);
+		} finally {
+			for (Future<R> future : futures) {
+				future.cancel(true);
+			}
+		}
+		return results;
+	}
+
+	// shuts down the executor created by the constructor, a caller's executor is left running
+	@Override
+	public void close() {
+		if (ownsExecutor) {
+			executor.shutdown();
+		}
+	}
+
+	private static int sum(List<Integer> counts) {
+		int sum = 0;
+		for (Integer x : counts) {
+			sum += x;
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,6 @@
+package com.github.microprograms.micro_oss_mysql.sharding;
+
+public interface ShardingStrategy {
+
+	int getShard(Object shardingKeyValue, int shardCount);
+}
@@ -0,0 +1,107 @@
+package com.github.microprograms.micro_oss_mysql.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.util.Base64;
+
+public class KeysetTokens {
+
+	public static String encode(Object[] values) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeShort(values.length);
+			for (Object value : values) {
+				writeValue(out, value);
+			}
+			out.flush();
+			return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	public static Object[] decode(String token) {
+		try {
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(Base64.getUrlDecoder().decode(token)));
+			Object[] values = new Object[in.readShort()];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = readValue(in);
+			}
+			return values;
+		} catch (IOException | IllegalArgumentException e) {
+			throw new RuntimeException("Invalid keyset token", e);
+		}
+	}
+
+	private static void writeValue(DataOutputStream out, Object value) throws IOException {
+		if (null == value) {
+			out.writeByte('N');
+		} else if (value instanceof String) {
+			out.writeByte('S');
+			out.writeUTF((String) value);
+		} else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+			out.writeByte('I');
+			out.writeInt(((Number) value).intValue());
+		} else if (value instanceof Long) {
+			out.writeByte('J');
+			out.writeLong((Long) value);
+		} else if (value instanceof BigDecimal || value instanceof BigInteger) {
+			out.writeByte('D');
+			out.writeUTF(value.toString());
+		} else if (value instanceof Double || value instanceof Float) {
+			out.writeByte('F');
+			out.writeDouble(((Number) value).doubleValue());
+		} else if (value instanceof Boolean) {
+			out.writeByte('Z');
+			out.writeBoolean((Boolean) value);
+		} else if (value instanceof Timestamp) {
+			out.writeByte('T');
+			out.writeLong(((Timestamp) value).getTime());
+			out.writeInt(((Timestamp) value).getNanos());
+		} else if (value instanceof java.sql.Date) {
+			out.writeByte('d');
+			out.writeLong(((java.sql.Date) value).getTime());
+		} else if (value instanceof java.util.Date) {
+			out.writeByte('T');
+			out.writeLong(((java.util.Date) value).getTime());
+			out.writeInt((int) ((((java.util.Date) value).getTime() % 1000 + 1000) % 1000) * 1000000);
+		} else {
+			throw new RuntimeException("Unsupported keyset value type: " + value.getClass().getName());
+		}
+	}
+
+	private static Object readValue(DataInputStream in) throws IOException {
+		byte type = in.readByte();
+		switch (type) {
+		case 'N':
+			return null;
+		case 'S':
+			return in.readUTF();
+		case 'I':
+			return in.readInt();
+		case 'J':
+			return in.readLong();
+		case 'D':
+			return new BigDecimal(in.readUTF());
+		case 'F':
+			return in.readDouble();
+		case 'Z':
+			return in.readBoolean();
+		case 'T':
+			Timestamp timestamp = new Timestamp(in.readLong());
+			timestamp.setNanos(in.readInt());
+			return timestamp;
+		case 'd':
+			return new java.sql.Date(in.readLong());
+		default:
+			throw new IOException("Unknown value type: " + (char) type);
+		}
+	}
+}
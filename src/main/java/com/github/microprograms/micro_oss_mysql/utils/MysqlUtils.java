@@ -24,124 +24,703 @@ import com.github.microprograms.micro_oss_core.model.dml.query.Sort;
 import com.github.microprograms.micro_oss_core.model.dml.update.DeleteCommand;
 import com.github.microprograms.micro_oss_core.model.dml.update.InsertCommand;
 import com.github.microprograms.micro_oss_core.model.dml.update.UpdateCommand;
+import com.github.microprograms.micro_oss_mysql.CompactQueryResult;
+import com.github.microprograms.micro_oss_mysql.model.ddl.IndexDefinition;
+import com.github.microprograms.micro_oss_mysql.model.ddl.MysqlTableDefinition;
 import com.github.microprograms.micro_oss_mysql.model.ddl.PrimaryKeyDefinition;
 import com.github.microprograms.micro_oss_mysql.model.ddl.TableColumnDefinition;
-import com.github.microprograms.micro_oss_mysql.model.ddl.TableElementDefinition;
+import com.github.microprograms.micro_oss_mysql.model.dml.InsertBatchCommand;
+import com.github.microprograms.micro_oss_mysql.model.dml.UpsertCommand;
 
 import org.apache.commons.lang3.StringUtils;
 
+/**
+ * Renders commands to SQL in a single pass: every part is appended to one
+ * per-thread StringBuilder, and a clause whose rendered text turns out blank
+ * is cut off again, so no intermediate strings or lists are built.
+ */
 public class MysqlUtils {
+	public static final String WINDOW_TOTAL_LABEL = "micro_oss_total";
+	private static final int MAX_PREPARED_STATEMENT_PARAMS = 65535;
+	private static final int INITIAL_BUILDER_CAPACITY = 256;
+	// larger builders, e.g. from batch inserts, are left to the GC
+	private static final int MAX_REUSED_BUILDER_CAPACITY = 64 * 1024;
+	private static final ThreadLocal<StringBuilder[]> builders = ThreadLocal
+			.withInitial(() -> new StringBuilder[] { new StringBuilder(INITIAL_BUILDER_CAPACITY) });
+
+	private static StringBuilder acquireBuilder() {
+		StringBuilder[] slot = builders.get();
+		StringBuilder sb = slot[0];
+		if (null == sb) {
+			// taken by an enclosing call on this thread
+			return new StringBuilder(INITIAL_BUILDER_CAPACITY);
+		}
+		slot[0] = null;
+		return sb;
+	}
+
+	private static void releaseBuilder(StringBuilder sb) {
+		if (sb.capacity() <= MAX_REUSED_BUILDER_CAPACITY) {
+			sb.setLength(0);
+			builders.get()[0] = sb;
+		}
+	}
+
+	private static String toSql(StringBuilder sb) {
+		String sql = sb.toString();
+		releaseBuilder(sb);
+		return sql;
+	}
 
 	public static String buildSql(CreateTableCommand command) {
-		StringBuffer sb = new StringBuffer("CREATE TABLE IF NOT EXISTS ");
+		return buildSql(command, null);
+	}
+
+	// mysqlDefinition: varchar lengths and secondary indexes, or null
+	public static String buildSql(CreateTableCommand command, MysqlTableDefinition mysqlDefinition) {
+		StringBuilder sb = acquireBuilder().append("CREATE TABLE IF NOT EXISTS ");
 		TableDefinition tableDefinition = command.getTableDefinition();
-		sb.append(tableDefinition.getTableName());
-		sb.append("(");
+		sb.append(tableDefinition.getTableName()).append('(');
 		PrimaryKeyDefinition primaryKeyDefinition = new PrimaryKeyDefinition();
-		List<TableElementDefinition> tableElementDefinitions = new ArrayList<>();
 		for (FieldDefinition fieldDefinition : tableDefinition.getFields()) {
 			boolean isPrimaryKey = fieldDefinition.getPrimaryKey() > 0;
 			if (isPrimaryKey) {
 				primaryKeyDefinition.getFiledNames().put(fieldDefinition.getPrimaryKey(), fieldDefinition.getName());
 			}
-			tableElementDefinitions
-					.add(new TableColumnDefinition(fieldDefinition.getName(), fieldDefinition.getComment(),
-							TableColumnDefinition.getMysqlDataType(fieldDefinition.getType(), isPrimaryKey)));
+			Integer varcharLength = null == mysqlDefinition ? null
+					: mysqlDefinition.getVarcharLength(fieldDefinition.getName());
+			sb.append(new TableColumnDefinition(fieldDefinition.getName(), fieldDefinition.getComment(),
+					TableColumnDefinition.getMysqlDataType(fieldDefinition.getType(), isPrimaryKey, varcharLength)))
+					.append(',');
+		}
+		sb.append(primaryKeyDefinition);
+		if (null != mysqlDefinition) {
+			for (IndexDefinition index : mysqlDefinition.getIndexes()) {
+				sb.append(',').append(index);
+			}
+		}
+		sb.append(") COMMENT='");
+		if (StringUtils.isNotBlank(tableDefinition.getComment())) {
+			appendEscaped(sb, tableDefinition.getComment());
+		}
+		return toSql(sb.append("';"));
+	}
+
+	// ALTER TABLE t ADD INDEX `a`(`x`),ADD UNIQUE INDEX `b`(`y`,`z`);
+	public static String buildAddIndexesSql(String tableName, List<IndexDefinition> indexes) {
+		StringBuilder sb = acquireBuilder().append("ALTER TABLE ").append(tableName).append(' ');
+		for (int i = 0; i < indexes.size(); i++) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			sb.append("ADD ").append(indexes.get(i));
 		}
-		tableElementDefinitions.add(primaryKeyDefinition);
-		sb.append(StringUtils.join(tableElementDefinitions, ","));
-		String tableComment = StringUtils.isBlank(tableDefinition.getComment()) ? ""
-				: tableDefinition.getComment().replaceAll("'", "''");
-		sb.append(String.format(") COMMENT='%s';", tableComment));
-		return sb.toString();
+		return toSql(sb.append(';'));
+	}
+
+	// chunks of BlobOutputStream, keyed by blob id and the position of their first byte
+	public static String buildCreateBlobTableSql(String tableName) {
+		return toSql(acquireBuilder().append("CREATE TABLE IF NOT EXISTS ").append(tableName)
+				.append("(`blob_id` varchar(191) NOT NULL,`pos` bigint NOT NULL,`data` mediumblob NOT NULL,")
+				.append("PRIMARY KEY(`blob_id`,`pos`)) COMMENT='blob chunks';"));
+	}
+
+	public static String buildInsertBlobChunkSql(String tableName) {
+		return toSql(acquireBuilder().append("INSERT INTO ").append(tableName)
+				.append(" (`blob_id`,`pos`,`data`) VALUES (?,?,?);"));
+	}
+
+	// the chunk with the greatest position not after ?
+	public static String buildSelectBlobChunkSql(String tableName) {
+		return toSql(acquireBuilder().append("SELECT `pos`,`data` FROM ").append(tableName)
+				.append(" WHERE `blob_id`=? AND `pos`<=? ORDER BY `pos` DESC LIMIT 1;"));
+	}
+
+	public static String buildSelectBlobLengthSql(String tableName) {
+		return toSql(acquireBuilder().append("SELECT `pos`+LENGTH(`data`) FROM ").append(tableName)
+				.append(" WHERE `blob_id`=? ORDER BY `pos` DESC LIMIT 1;"));
+	}
+
+	public static String buildDeleteBlobSql(String tableName) {
+		return toSql(acquireBuilder().append("DELETE FROM ").append(tableName).append(" WHERE `blob_id`=?;"));
 	}
 
 	public static String buildSql(DropTableCommand command) {
-		return String.format("DROP TABLE IF EXISTS %s;", command.getTableName());
+		return toSql(acquireBuilder().append("DROP TABLE IF EXISTS ").append(command.getTableName()).append(';'));
 	}
 
 	public static String buildSql(InsertCommand command) {
-		List<String> fieldNames = new ArrayList<>();
-		List<String> fieldValues = new ArrayList<>();
-		for (Field field : command.getEntity().getFields()) {
-			fieldNames.add(getSqlField(field.getName()));
-			String value = getSqlValue(field.getValue());
-			fieldValues.add(value == null ? "null" : value);
+		return buildSql(command, null);
+	}
+
+	public static String buildSql(InsertCommand command, List<Object> params) {
+		StringBuilder sb = acquireBuilder();
+		appendInsertHead(sb, command.getEntity());
+		appendValues(sb, command.getEntity(), params);
+		return toSql(sb.append(';'));
+	}
+
+	// INSERT INTO t (`a`,`b`) VALUES 
+	private static void appendInsertHead(StringBuilder sb, Entity entity) {
+		sb.append("INSERT INTO ").append(entity.getTableName()).append(" (");
+		appendSqlFields(sb, entity.getFields());
+		sb.append(") VALUES ");
+	}
+
+	private static void appendSqlFields(StringBuilder sb, List<Field> fields) {
+		for (int i = 0; i < fields.size(); i++) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			appendSqlField(sb, fields.get(i).getName());
+		}
+	}
+
+	// (1,'a',null)
+	private static void appendValues(StringBuilder sb, Entity entity, List<Object> params) {
+		sb.append('(');
+		List<Field> fields = entity.getFields();
+		for (int i = 0; i < fields.size(); i++) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			appendSqlValue(sb, fields.get(i).getValue(), params);
+		}
+		sb.append(')');
+	}
+
+	public static List<SqlStatement> buildStatements(InsertBatchCommand command, int maxRowsPerChunk,
+			int maxPacketBytes, boolean bindParameters) {
+		return buildInsertStatements(command.getEntities(), "", maxRowsPerChunk, maxPacketBytes, bindParameters);
+	}
+
+	public static List<SqlStatement> buildStatements(UpsertCommand command, int maxRowsPerChunk, int maxPacketBytes,
+			boolean bindParameters) {
+		List<Entity> entities = command.getEntities();
+		if (null == entities || entities.isEmpty()) {
+			return new ArrayList<>();
+		}
+		StringBuilder sb = acquireBuilder().append(" ON DUPLICATE KEY UPDATE ");
+		int start = sb.length();
+		List<String> updateFieldNames = command.getUpdateFieldNames();
+		if (null == updateFieldNames) {
+			for (Field field : entities.get(0).getFields()) {
+				if (!containsIgnoreCase(command.getPrimaryKeyFieldNames(), field.getName())) {
+					appendUpsertPair(sb, field.getName());
+				}
+			}
+		} else {
+			for (String fieldName : updateFieldNames) {
+				appendUpsertPair(sb, fieldName);
+			}
+		}
+		if (sb.length() == start) {
+			// nothing to update: keep the existing row
+			String fieldName = entities.get(0).getFields().get(0).getName();
+			appendSqlField(sb, fieldName).append('=');
+			appendSqlField(sb, fieldName);
+		} else {
+			sb.setLength(sb.length() - 1);
+		}
+		String tail = toSql(sb);
+		return buildInsertStatements(entities, tail, maxRowsPerChunk, maxPacketBytes, bindParameters);
+	}
+
+	// `a`=VALUES(`a`),
+	private static void appendUpsertPair(StringBuilder sb, String fieldName) {
+		appendSqlField(sb, fieldName).append("=VALUES(");
+		appendSqlField(sb, fieldName).append("),");
+	}
+
+	private static boolean containsIgnoreCase(List<String> list, String value) {
+		if (list != null) {
+			for (String x : list) {
+				if (x.equalsIgnoreCase(value)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static List<SqlStatement> buildInsertStatements(List<Entity> entities, String tail, int maxRowsPerChunk,
+			int maxPacketBytes, boolean bindParameters) {
+		List<SqlStatement> statements = new ArrayList<>();
+		if (null == entities || entities.isEmpty()) {
+			return statements;
+		}
+		Entity first = entities.get(0);
+		StringBuilder sb = acquireBuilder();
+		appendInsertHead(sb, first);
+		int headLength = sb.length();
+		long headBytes = getUtf8Length(sb) + getUtf8Length(tail) + 1;
+		int fieldCount = first.getFields().size();
+		int maxRows = maxRowsPerChunk > 0 ? maxRowsPerChunk : Integer.MAX_VALUE;
+		if (bindParameters && fieldCount > 0) {
+			maxRows = Math.min(maxRows, Math.max(1, MAX_PREPARED_STATEMENT_PARAMS / fieldCount));
+		}
+		List<Object> params = bindParameters ? new ArrayList<>() : null;
+		int rows = 0;
+		long bytes = headBytes;
+		for (Entity entity : entities) {
+			checkSameColumns(first, entity);
+			// chunks are sized by the inline rendering, bound or not
+			long rowBytes = getValuesUtf8Length(entity) + 1;
+			if (rows > 0 && (rows >= maxRows || bytes + rowBytes > maxPacketBytes)) {
+				statements.add(new SqlStatement(sb.append(tail).append(';').toString(), params));
+				sb.setLength(headLength);
+				params = bindParameters ? new ArrayList<>() : null;
+				rows = 0;
+				bytes = headBytes;
+			}
+			if (rows > 0) {
+				sb.append(',');
+			}
+			appendValues(sb, entity, params);
+			rows++;
+			bytes += rowBytes;
+		}
+		statements.add(new SqlStatement(sb.append(tail).append(';').toString(), params));
+		releaseBuilder(sb);
+		return statements;
+	}
+
+	static void checkSameColumns(Entity expected, Entity actual) {
+		if (expected == actual) {
+			return;
+		}
+		if (!StringUtils.equals(expected.getTableName(), actual.getTableName())) {
+			throw new RuntimeException("Batch entities must belong to the same table");
+		}
+		List<Field> expectedFields = expected.getFields();
+		List<Field> actualFields = actual.getFields();
+		if (expectedFields.size() != actualFields.size()) {
+			throw new RuntimeException("Batch entities must have the same fields");
+		}
+		for (int i = 0; i < expectedFields.size(); i++) {
+			if (!StringUtils.equals(expectedFields.get(i).getName(), actualFields.get(i).getName())) {
+				throw new RuntimeException("Batch entities must have the same fields");
+			}
+		}
+	}
+
+	private static long getUtf8Length(CharSequence cs) {
+		long length = 0;
+		for (int i = 0; i < cs.length(); i++) {
+			char c = cs.charAt(i);
+			if (c < 0x80) {
+				length += 1;
+			} else if (c < 0x800) {
+				length += 2;
+			} else if (Character.isHighSurrogate(c)) {
+				length += 4;
+				i++;
+			} else {
+				length += 3;
+			}
+		}
+		return length;
+	}
+
+	// the UTF-8 length of appendValues(sb, entity, null) without rendering it
+	private static long getValuesUtf8Length(Entity entity) {
+		List<Field> fields = entity.getFields();
+		long length = 2 + Math.max(0, fields.size() - 1);
+		for (Field field : fields) {
+			Object value = field.getValue();
+			if (null == value) {
+				length += 4;
+			} else if (value instanceof String) {
+				String s = (String) value;
+				length += 2 + getUtf8Length(s) + StringUtils.countMatches(s, '\'');
+			} else if (value instanceof Integer || value instanceof Long) {
+				length += getDecimalLength(((Number) value).longValue());
+			} else {
+				length += getUtf8Length(value.toString());
+			}
+		}
+		return length;
+	}
+
+	private static int getDecimalLength(long x) {
+		int length = x < 0 ? 2 : 1;
+		for (long y = x / 10; y != 0; y /= 10) {
+			length++;
 		}
-		return String.format("INSERT INTO %s (%s) VALUES (%s);", command.getEntity().getTableName(),
-				StringUtils.join(fieldNames, ","), StringUtils.join(fieldValues, ","));
+		return length;
+	}
+
+	// reads the stream set with com.mysql.jdbc.Statement#setLocalInfileInputStream, see TsvEntityInputStream
+	public static String buildLoadDataSql(String tableName, List<String> fieldNames) {
+		StringBuilder sb = acquireBuilder().append("LOAD DATA LOCAL INFILE 'stream' INTO TABLE ").append(tableName)
+				.append(" CHARACTER SET utf8mb4 (");
+		for (int i = 0; i < fieldNames.size(); i++) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			appendSqlField(sb, fieldNames.get(i));
+		}
+		return toSql(sb.append(");"));
 	}
 
 	public static String buildSql(UpdateCommand command) {
-		StringBuffer sb = new StringBuffer("UPDATE ").append(command.getTableName());
+		return buildSql(command, null);
+	}
+
+	public static String buildSql(UpdateCommand command, List<Object> params) {
 		List<Field> fields = command.getFields();
 		if (null == fields || fields.isEmpty()) {
 			return null;
 		}
-		List<String> pairs = new ArrayList<>();
-		for (Field x : fields) {
-			pairs.add(String.format("%s=%s", getSqlField(x.getName()), getSqlValue(x.getValue())));
+		StringBuilder sb = acquireBuilder().append("UPDATE ").append(command.getTableName()).append(" SET ");
+		for (int i = 0; i < fields.size(); i++) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			Field x = fields.get(i);
+			appendSqlField(sb, x.getName()).append('=');
+			appendSqlValue(sb, x.getValue(), params);
 		}
-		sb.append(" SET ").append(StringUtils.join(pairs, ","));
-		String where = parseCondition(command.getWhere());
-		if (StringUtils.isNotBlank(where)) {
-			sb.append(" WHERE ").append(where);
+		appendWhere(sb, command.getWhere(), params);
+		return toSql(sb.append(';'));
+	}
+
+	// UPDATE t SET `a`=?,`b`=? WHERE `key`=?;
+	public static String buildKeyedUpdateSql(String tableName, List<String> fieldNames, String keyFieldName) {
+		StringBuilder sb = acquireBuilder().append("UPDATE ").append(tableName).append(" SET ");
+		for (int i = 0; i < fieldNames.size(); i++) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			appendSqlField(sb, fieldNames.get(i)).append("=?");
 		}
-		return sb.append(";").toString();
+		sb.append(" WHERE ");
+		return toSql(appendSqlField(sb, keyFieldName).append("=?;"));
 	}
 
 	public static String buildSql(DeleteCommand command) {
-		StringBuffer sb = new StringBuffer("DELETE FROM ").append(command.getTableName());
-		String where = parseCondition(command.getWhere());
-		if (StringUtils.isNoneBlank(where)) {
-			sb.append(" WHERE ").append(where);
-		}
-		return sb.append(";").toString();
+		return buildSql(command, null);
+	}
+
+	public static String buildSql(DeleteCommand command, List<Object> params) {
+		StringBuilder sb = acquireBuilder().append("DELETE FROM ").append(command.getTableName());
+		appendWhere(sb, command.getWhere(), params);
+		return toSql(sb.append(';'));
 	}
 
 	public static String buildSql(SelectCountCommand command) {
-		StringBuffer sb = new StringBuffer("SELECT COUNT(*) AS count FROM ").append(command.getTableName());
-		List<Join> joins = command.getJoins();
-		if (joins != null) {
-			for (Join join : joins) {
-				sb.append(" ").append(parseJoin(join));
+		return buildSql(command, null);
+	}
+
+	public static String buildSql(SelectCountCommand command, List<Object> params) {
+		StringBuilder sb = acquireBuilder();
+		appendCount(sb, command.getTableName(), command.getJoins(), command.getWhere(), params);
+		return toSql(sb);
+	}
+
+	public static String buildSql(SelectCommand command) {
+		return buildSql(command, null);
+	}
+
+	public static String buildSql(SelectCommand command, List<Object> params) {
+		StringBuilder sb = acquireBuilder();
+		appendSelect(sb, command, null, params);
+		appendPager(sb, command.getPager());
+		return toSql(sb.append(';'));
+	}
+
+	// renders "LIMIT limit" in place of the command's own pager
+	public static String buildSql(SelectCommand command, int limit, List<Object> params) {
+		StringBuilder sb = acquireBuilder();
+		appendSelect(sb, command, null, params);
+		return toSql(sb.append(" LIMIT ").append(limit).append(';'));
+	}
+
+	// selects COUNT(*) OVER() as a last column named WINDOW_TOTAL_LABEL, needs MySQL 8
+	public static String buildWindowCountSql(SelectCommand command, List<Object> params) {
+		StringBuilder sb = acquireBuilder();
+		appendSelect(sb, command, ", COUNT(*) OVER() AS " + WINDOW_TOTAL_LABEL, params);
+		appendPager(sb, command.getPager());
+		return toSql(sb.append(';'));
+	}
+
+	// counts all rows the command would select without its pager
+	public static String buildCountSql(SelectCommand command, List<Object> params) {
+		StringBuilder sb = acquireBuilder();
+		appendCount(sb, command.getTableName(), command.getJoins(), command.getWhere(), params);
+		return toSql(sb);
+	}
+
+	private static void appendCount(StringBuilder sb, String tableName, List<Join> joins, Condition where,
+			List<Object> params) {
+		sb.append("SELECT COUNT(*) AS count FROM ").append(tableName);
+		appendJoins(sb, joins, params);
+		appendWhere(sb, where, params);
+		sb.append(';');
+	}
+
+	// SELECT ... FROM ... [JOIN ...] [WHERE ...] [ORDER BY ...], without pager and ';'
+	private static void appendSelect(StringBuilder sb, SelectCommand command, String extraColumns,
+			List<Object> params) {
+		appendSelectFrom(sb, command, extraColumns);
+		appendJoins(sb, command.getJoins(), params);
+		appendWhere(sb, command.getWhere(), params);
+		int mark = sb.length();
+		sb.append(" ORDER BY ");
+		int start = sb.length();
+		appendSorts(sb, command.getSorts());
+		if (isBlank(sb, start)) {
+			sb.setLength(mark);
+		}
+	}
+
+	private static void appendSelectFrom(StringBuilder sb, SelectCommand command, String extraColumns) {
+		sb.append("SELECT ");
+		List<String> fieldNames = command.getFieldNames();
+		if (fieldNames == null || fieldNames.isEmpty()) {
+			sb.append('*');
+		} else {
+			for (int i = 0; i < fieldNames.size(); i++) {
+				if (i > 0) {
+					sb.append(',');
+				}
+				if (fieldNames.get(i) != null) {
+					sb.append(fieldNames.get(i));
+				}
 			}
 		}
-		String where = MysqlUtils.parseCondition(command.getWhere());
-		if (StringUtils.isNotBlank(where)) {
-			sb.append(" WHERE ").append(where);
+		if (extraColumns != null) {
+			sb.append(extraColumns);
 		}
-		return sb.append(";").toString();
+		sb.append(" FROM ").append(command.getTableName());
 	}
 
-	public static String buildSql(SelectCommand command) {
-		StringBuffer sb = new StringBuffer("SELECT ");
-		sb.append(command.getFieldNames() == null || command.getFieldNames().isEmpty() ? "*"
-				: StringUtils.join(command.getFieldNames(), ","));
-		sb.append(" FROM ").append(command.getTableName());
-		List<Join> joins = command.getJoins();
+	private static void appendJoins(StringBuilder sb, List<Join> joins, List<Object> params) {
 		if (joins != null) {
 			for (Join join : joins) {
-				sb.append(" ").append(parseJoin(join));
+				appendJoin(sb.append(' '), join, params);
 			}
 		}
-		String where = parseCondition(command.getWhere());
-		if (StringUtils.isNotBlank(where)) {
-			sb.append(" WHERE ").append(where);
+	}
+
+	// " WHERE condition", nothing when the condition renders blank
+	private static void appendWhere(StringBuilder sb, Condition where, List<Object> params) {
+		int mark = sb.length();
+		sb.append(" WHERE ");
+		int start = sb.length();
+		appendCondition(sb, where, params);
+		if (isBlank(sb, start)) {
+			sb.setLength(mark);
+		}
+	}
+
+	private static void appendPager(StringBuilder sb, PagerRequest pagerRequest) {
+		if (null != pagerRequest) {
+			appendPager(sb.append(' '), pagerRequest.getPageSize(),
+					pagerRequest.getPageIndex() * pagerRequest.getPageSize());
+		}
+	}
+
+	private static void appendPager(StringBuilder sb, int limit, int offset) {
+		sb.append("LIMIT ").append(limit).append(" OFFSET ").append(offset);
+	}
+
+	private static boolean isBlank(CharSequence cs, int start) {
+		for (int i = start; i < cs.length(); i++) {
+			if (!Character.isWhitespace(cs.charAt(i))) {
+				return false;
+			}
 		}
-		String sort = parseSorts(command.getSorts());
-		if (StringUtils.isNotBlank(sort)) {
-			sb.append(" ORDER BY ").append(sort);
+		return true;
+	}
+
+	public static String buildKeysetSql(SelectCommand command, Object[] lastValues, int pageSize,
+			List<Object> params) {
+		List<Sort> sorts = command.getSorts();
+		if (sorts == null || sorts.isEmpty()) {
+			throw new RuntimeException("Keyset pagination requires at least one Sort");
 		}
-		String pager = parsePager(command.getPager());
-		if (StringUtils.isNotBlank(pager)) {
-			sb.append(" ").append(pager);
+		StringBuilder sb = acquireBuilder();
+		appendSelectFrom(sb, command, null);
+		appendJoins(sb, command.getJoins(), params);
+		if (lastValues == null) {
+			appendWhere(sb, command.getWhere(), params);
+		} else {
+			int mark = sb.length();
+			sb.append(" WHERE (");
+			int start = sb.length();
+			appendCondition(sb, command.getWhere(), params);
+			if (isBlank(sb, start)) {
+				sb.setLength(mark);
+				sb.append(" WHERE ");
+			} else {
+				sb.append(") AND ");
+			}
+			appendKeyset(sb, sorts, lastValues, params);
 		}
-		return sb.append(";").toString();
+		appendSorts(sb.append(" ORDER BY "), sorts);
+		sb.append(" LIMIT ").append(pageSize);
+		return toSql(sb.append(';'));
+	}
+
+	public static SqlStatement buildKeysetStatement(SelectCommand command, Object[] lastValues, int pageSize,
+			boolean bindParameters) {
+		List<Object> params = bindParameters ? new ArrayList<>() : null;
+		return new SqlStatement(buildKeysetSql(command, lastValues, pageSize, params), params);
+	}
+
+	private static void appendKeyset(StringBuilder sb, List<Sort> sorts, Object[] lastValues, List<Object> params) {
+		if (lastValues.length != sorts.size()) {
+			throw new RuntimeException("Keyset token does not match the Sort list");
+		}
+		for (Object value : lastValues) {
+			if (null == value) {
+				throw new RuntimeException("Keyset pagination does not support null sort key values");
+			}
+		}
+		boolean descending = isDescending(sorts.get(0));
+		boolean sameDirection = true;
+		for (Sort x : sorts) {
+			sameDirection &= isDescending(x) == descending;
+		}
+		String operator = descending ? " < " : " > ";
+		if (sorts.size() == 1) {
+			sb.append(sorts.get(0).getFieldName()).append(operator);
+			appendKeysetValue(sb, lastValues[0], params);
+			return;
+		}
+		if (sameDirection) {
+			sb.append('(');
+			for (int i = 0; i < sorts.size(); i++) {
+				if (i > 0) {
+					sb.append(',');
+				}
+				if (sorts.get(i).getFieldName() != null) {
+					sb.append(sorts.get(i).getFieldName());
+				}
+			}
+			sb.append(')').append(operator).append('(');
+			for (int i = 0; i < sorts.size(); i++) {
+				if (i > 0) {
+					sb.append(',');
+				}
+				appendKeysetValue(sb, lastValues[i], params);
+			}
+			sb.append(')');
+			return;
+		}
+		// mixed directions: (k1 > ?) OR (k1 = ? AND k2 < ?) OR ...
+		sb.append('(');
+		for (int i = 0; i < sorts.size(); i++) {
+			if (i > 0) {
+				sb.append(" OR ");
+			}
+			sb.append('(');
+			for (int j = 0; j < i; j++) {
+				sb.append(sorts.get(j).getFieldName()).append(" = ");
+				appendKeysetValue(sb, lastValues[j], params);
+				sb.append(" AND ");
+			}
+			sb.append(sorts.get(i).getFieldName()).append(isDescending(sorts.get(i)) ? " < " : " > ");
+			appendKeysetValue(sb, lastValues[i], params);
+			sb.append(')');
+		}
+		sb.append(')');
+	}
+
+	private static void appendKeysetValue(StringBuilder sb, Object value, List<Object> params) {
+		if (null != params) {
+			params.add(value);
+			sb.append('?');
+			return;
+		}
+		appendSqlValue(sb, value instanceof java.util.Date ? value.toString() : value);
+	}
+
+	public static boolean isDescending(Sort sort) {
+		return "desc".equalsIgnoreCase(String.valueOf(sort.getType()));
+	}
+
+	// "t.`name`" -> "name", matching the column label returned by the server
+	public static String getColumnLabel(String fieldName) {
+		String label = fieldName.trim();
+		int dot = label.lastIndexOf('.');
+		if (dot >= 0) {
+			label = label.substring(dot + 1);
+		}
+		return StringUtils.strip(label, "`");
+	}
+
+	public static SqlStatement buildStatement(InsertCommand command, boolean bindParameters) {
+		List<Object> params = bindParameters ? new ArrayList<>() : null;
+		return new SqlStatement(buildSql(command, params), params);
+	}
+
+	public static SqlStatement buildStatement(UpdateCommand command, boolean bindParameters) {
+		List<Object> params = bindParameters ? new ArrayList<>() : null;
+		return new SqlStatement(buildSql(command, params), params);
+	}
+
+	public static SqlStatement buildStatement(DeleteCommand command, boolean bindParameters) {
+		List<Object> params = bindParameters ? new ArrayList<>() : null;
+		return new SqlStatement(buildSql(command, params), params);
+	}
+
+	public static SqlStatement buildStatement(SelectCountCommand command, boolean bindParameters) {
+		List<Object> params = bindParameters ? new ArrayList<>() : null;
+		return new SqlStatement(buildSql(command, params), params);
+	}
+
+	public static SqlStatement buildStatement(SelectCommand command, boolean bindParameters) {
+		List<Object> params = bindParameters ? new ArrayList<>() : null;
+		return new SqlStatement(buildSql(command, params), params);
+	}
+
+	public static SqlStatement buildStatement(SelectCommand command, int limit, boolean bindParameters) {
+		List<Object> params = bindParameters ? new ArrayList<>() : null;
+		return new SqlStatement(buildSql(command, limit, params), params);
+	}
+
+	public static SqlStatement buildWindowCountStatement(SelectCommand command, boolean bindParameters) {
+		List<Object> params = bindParameters ? new ArrayList<>() : null;
+		return new SqlStatement(buildWindowCountSql(command, params), params);
+	}
+
+	public static SqlStatement buildCountStatement(SelectCommand command, boolean bindParameters) {
+		List<Object> params = bindParameters ? new ArrayList<>() : null;
+		return new SqlStatement(buildCountSql(command, params), params);
+	}
+
+	public static List<String> getTableNames(SelectCommand command) {
+		return getTableNames(command.getTableName(), command.getJoins());
+	}
+
+	public static List<String> getTableNames(SelectCountCommand command) {
+		return getTableNames(command.getTableName(), command.getJoins());
+	}
+
+	private static List<String> getTableNames(String tableName, List<Join> joins) {
+		List<String> tableNames = new ArrayList<>();
+		tableNames.add(tableName);
+		if (joins != null) {
+			for (Join join : joins) {
+				tableNames.add(join.getTableName());
+			}
+		}
+		return tableNames;
 	}
 
 	public static String parseJoin(Join join) {
-		StringBuffer sb = new StringBuffer();
+		return parseJoin(join, null);
+	}
+
+	public static String parseJoin(Join join, List<Object> params) {
+		StringBuilder sb = acquireBuilder();
+		appendJoin(sb, join, params);
+		return toSql(sb);
+	}
+
+	private static void appendJoin(StringBuilder sb, Join join, List<Object> params) {
 		if (TypeEnum.join == join.getType()) {
 			sb.append("JOIN");
 		} else if (TypeEnum.leftJoin == join.getType()) {
@@ -151,43 +730,76 @@ public class MysqlUtils {
 		} else {
 			throw new RuntimeException("Unsupported JOIN Type");
 		}
-		sb.append(" ").append(join.getTableName());
-		String condition = parseCondition(join.getCondition());
-		if (StringUtils.isNotBlank(condition)) {
-			sb.append(" ON ").append(condition);
+		sb.append(' ').append(join.getTableName());
+		int mark = sb.length();
+		sb.append(" ON ");
+		int start = sb.length();
+		appendCondition(sb, join.getCondition(), params);
+		if (isBlank(sb, start)) {
+			sb.setLength(mark);
 		}
-		return sb.toString();
 	}
 
 	public static String parseCondition(Condition where) {
+		return parseCondition(where, null);
+	}
+
+	// null for no Condition or one without children, otherwise the rendered text, possibly blank
+	public static String parseCondition(Condition where, List<Object> params) {
 		if (null == where) {
 			return null;
+		}
+		if (where instanceof ComplexCondition) {
+			Condition[] conditions = ((ComplexCondition) where).getConditions();
+			if (null == conditions || conditions.length == 0) {
+				return null;
+			}
+		}
+		StringBuilder sb = acquireBuilder();
+		appendCondition(sb, where, params);
+		return toSql(sb);
+	}
+
+	private static void appendCondition(StringBuilder sb, Condition where, List<Object> params) {
+		if (null == where) {
+			return;
 		} else if (where instanceof ComplexCondition) {
 			ComplexCondition complex = (ComplexCondition) where;
 			Condition[] conditions = complex.getConditions();
 			if (null == conditions || conditions.length == 0) {
-				return null;
+				return;
 			}
-			List<String> childStringList = new ArrayList<>();
-			for (Condition child : complex.getConditions()) {
+			String separator = getSeparator(complex.getType());
+			boolean first = true;
+			for (Condition child : conditions) {
 				if (null == child) {
 					continue;
 				}
-				String childString = parseCondition(child);
-				if (StringUtils.isBlank(childString)) {
+				int mark = sb.length();
+				if (!first) {
+					sb.append(separator);
+				}
+				boolean nested = child instanceof ComplexCondition;
+				if (nested) {
+					sb.append('(');
+				}
+				int start = sb.length();
+				appendCondition(sb, child, params);
+				// children that render blank are skipped with their separator
+				if (isBlank(sb, start)) {
+					sb.setLength(mark);
 					continue;
 				}
-				if (child instanceof ComplexCondition) {
-					childStringList.add("(" + childString + ")");
-				} else {
-					childStringList.add(childString);
+				if (nested) {
+					sb.append(')');
 				}
+				first = false;
 			}
-			return StringUtils.join(childStringList, getSeparator(complex.getType()));
 		} else if (where instanceof RawCondition) {
-			return String.format("%s %s", where.getKey(), where.getValue());
+			sb.append(where.getKey()).append(' ').append(where.getValue());
 		} else {
-			return String.format("%s %s", where.getKey(), getSqlValue(where.getValue()));
+			sb.append(where.getKey()).append(' ');
+			appendSqlValue(sb, where.getValue(), params);
 		}
 	}
 
@@ -202,55 +814,114 @@ public class MysqlUtils {
 		}
 	}
 
-	private static String getSqlField(String field) {
-		return "`" + field + "`";
+	private static StringBuilder appendSqlField(StringBuilder sb, String field) {
+		return sb.append('`').append(field).append('`');
 	}
 
-	private static String getSqlValue(Object value) {
-		if (null == value) {
-			return null;
-		}
-		if (value instanceof String) {
-			return "'" + value.toString().replaceAll("'", "''") + "'";
+	private static void appendSqlValue(StringBuilder sb, Object value, List<Object> params) {
+		if (null != params && isBindable(value)) {
+			params.add(value);
+			sb.append('?');
+			return;
 		}
-		if (value instanceof Integer) {
-			return value.toString();
+		appendSqlValue(sb, value);
+	}
+
+	private static boolean isBindable(Object value) {
+		return value instanceof String || value instanceof Number || value instanceof Boolean
+				|| value instanceof java.util.Date;
+	}
+
+	private static void appendSqlValue(StringBuilder sb, Object value) {
+		if (null == value) {
+			sb.append("null");
+		} else if (value instanceof String) {
+			appendEscaped(sb.append('\''), (String) value).append('\'');
+		} else if (value instanceof Integer) {
+			sb.append(((Integer) value).intValue());
+		} else if (value instanceof Long) {
+			sb.append(((Long) value).longValue());
+		} else {
+			sb.append(value.toString());
 		}
-		if (value instanceof Long) {
-			return value.toString();
+	}
+
+	// doubles single quotes
+	public static String escape(String value) {
+		return toSql(appendEscaped(acquireBuilder(), value));
+	}
+
+	private static StringBuilder appendEscaped(StringBuilder sb, String value) {
+		int from = 0;
+		for (int i = value.indexOf('\''); i >= 0; i = value.indexOf('\'', from)) {
+			sb.append(value, from, i + 1).append('\'');
+			from = i + 1;
 		}
-		return value.toString();
+		return sb.append(value, from, value.length());
 	}
 
 	public static String parseSorts(List<Sort> sorts) {
 		if (sorts == null || sorts.isEmpty()) {
 			return null;
 		}
-		List<String> list = new ArrayList<>();
-		for (Sort x : sorts) {
-			list.add(String.format("%s %s", x.getFieldName(), x.getType()));
+		StringBuilder sb = acquireBuilder();
+		appendSorts(sb, sorts);
+		return toSql(sb);
+	}
+
+	private static void appendSorts(StringBuilder sb, List<Sort> sorts) {
+		if (sorts == null) {
+			return;
+		}
+		for (int i = 0; i < sorts.size(); i++) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			Sort x = sorts.get(i);
+			sb.append(x.getFieldName()).append(' ').append(x.getType());
 		}
-		return StringUtils.join(list, ",");
 	}
 
 	public static String parsePager(PagerRequest pagerRequest) {
 		if (null == pagerRequest) {
 			return null;
 		}
-		return String.format("LIMIT %s OFFSET %s", pagerRequest.getPageSize(),
-				pagerRequest.getPageIndex() * pagerRequest.getPageSize());
+		StringBuilder sb = acquireBuilder();
+		appendPager(sb, pagerRequest.getPageSize(), pagerRequest.getPageIndex() * pagerRequest.getPageSize());
+		return toSql(sb);
 	}
 
 	public static List<Entity> getEntityList(String tableName, ResultSet rs) throws SQLException {
 		List<Entity> list = new ArrayList<>();
-		ResultSetMetaData rsMetaData = rs.getMetaData();
+		String[] columnLabels = getColumnLabels(rs.getMetaData());
 		while (rs.next()) {
-			List<Field> fields = new ArrayList<>();
-			for (int i = 1; i <= rsMetaData.getColumnCount(); i++) {
-				fields.add(new Field(rsMetaData.getColumnLabel(i), rs.getObject(i)));
+			List<Field> fields = new ArrayList<>(columnLabels.length);
+			for (int i = 0; i < columnLabels.length; i++) {
+				fields.add(new Field(columnLabels[i], rs.getObject(i + 1)));
 			}
 			list.add(new Entity(tableName, fields));
 		}
 		return list;
 	}
+
+	public static CompactQueryResult getCompactQueryResult(String tableName, ResultSet rs) throws SQLException {
+		String[] columnLabels = getColumnLabels(rs.getMetaData());
+		List<Object[]> rows = new ArrayList<>();
+		while (rs.next()) {
+			Object[] row = new Object[columnLabels.length];
+			for (int i = 0; i < columnLabels.length; i++) {
+				row[i] = rs.getObject(i + 1);
+			}
+			rows.add(row);
+		}
+		return new CompactQueryResult(tableName, columnLabels, rows);
+	}
+
+	public static String[] getColumnLabels(ResultSetMetaData rsMetaData) throws SQLException {
+		String[] columnLabels = new String[rsMetaData.getColumnCount()];
+		for (int i = 0; i < columnLabels.length; i++) {
+			columnLabels[i] = rsMetaData.getColumnLabel(i + 1);
+		}
+		return columnLabels;
+	}
 }
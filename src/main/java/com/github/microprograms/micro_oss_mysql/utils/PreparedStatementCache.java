@@ -0,0 +1,127 @@
+package com.github.microprograms.micro_oss_mysql.utils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * LRU cache of prepared statements per physical connection, keyed on the SQL
+ * text. A pool hands out a new proxy on every checkout, so statements are
+ * prepared on the unwrapped connection to be reused across checkouts. The
+ * statements of a closed physical connection are closed and dropped the next
+ * time a physical connection is seen for the first time.
+ * <p>
+ * Connector/J 5.1 prepares statements on the client unless the URL sets
+ * {@code useServerPrepStmts=true}: without it the server still parses every
+ * execution and this cache only saves the driver's work. The recommended
+ * setup is {@code useServerPrepStmts=true&cachePrepStmts=true} with
+ * prepStmtCacheSize, which keeps server-side statements per physical
+ * connection inside the driver; this cache is for drivers without one.
+ */
+public class PreparedStatementCache {
+	private static final Logger log = LoggerFactory.getLogger(PreparedStatementCache.class);
+
+	private final int maxSize;
+	private final Map<Connection, Map<String, PreparedStatement>> statementsByConnection = new IdentityHashMap<>();
+
+	public PreparedStatementCache(int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public PreparedStatement prepare(Connection conn, String sql) throws SQLException {
+		Connection physical = unwrap(conn);
+		Map<String, PreparedStatement> statements = getStatements(physical);
+		synchronized (statements) {
+			PreparedStatement ps = statements.get(sql);
+			if (ps != null && !ps.isClosed()) {
+				ps.clearParameters();
+				return ps;
+			}
+			ps = physical.prepareStatement(sql);
+			statements.put(sql, ps);
+			return ps;
+		}
+	}
+
+	public void clear() {
+		synchronized (statementsByConnection) {
+			for (Map<String, PreparedStatement> statements : statementsByConnection.values()) {
+				closeAll(statements);
+			}
+			statementsByConnection.clear();
+		}
+	}
+
+	private Map<String, PreparedStatement> getStatements(Connection physical) throws SQLException {
+		synchronized (statementsByConnection) {
+			Map<String, PreparedStatement> statements = statementsByConnection.get(physical);
+			if (statements == null) {
+				// one entry per physical connection, which a pool rarely opens
+				evictClosedConnections();
+				statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+					private static final long serialVersionUID = 1L;
+
+					@Override
+					protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+						if (size() <= maxSize) {
+							return false;
+						}
+						close(eldest.getValue());
+						return true;
+					}
+				};
+				statementsByConnection.put(physical, statements);
+			}
+			return statements;
+		}
+	}
+
+	private void evictClosedConnections() throws SQLException {
+		Iterator<Map.Entry<Connection, Map<String, PreparedStatement>>> it = statementsByConnection.entrySet()
+				.iterator();
+		while (it.hasNext()) {
+			Map.Entry<Connection, Map<String, PreparedStatement>> entry = it.next();
+			if (entry.getKey().isClosed()) {
+				closeAll(entry.getValue());
+				it.remove();
+			}
+		}
+	}
+
+	private static Connection unwrap(Connection conn) {
+		try {
+			return conn.isWrapperFor(Connection.class) ? conn.unwrap(Connection.class) : conn;
+		} catch (SQLException e) {
+			return conn;
+		}
+	}
+
+	private static void closeAll(Map<String, PreparedStatement> statements) {
+		synchronized (statements) {
+			for (PreparedStatement ps : statements.values()) {
+				close(ps);
+			}
+			statements.clear();
+		}
+	}
+
+	private static void close(PreparedStatement ps) {
+		try {
+			ps.close();
+		} catch (SQLException e) {
+			// ignore
+			log.warn("", e);
+		}
+	}
+}
@@ -0,0 +1,8 @@
+package com.github.microprograms.micro_oss_mysql.utils;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+public interface ResultSetHandler<R> {
+	R handle(ResultSet rs) throws SQLException;
+}
@@ -0,0 +1,232 @@
+package com.github.microprograms.micro_oss_mysql.utils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps result set rows straight into objects of {@code T}, reading each column
+ * with the typed getter that matches the target field. A mapper is compiled
+ * once per class and column layout and then reused.
+ */
+public class RowMapper<T> {
+	private static final Map<Class<?>, Map<String, RowMapper<?>>> mappers = new ConcurrentHashMap<>();
+	private static final Map<Class<?>, List<String>> columnNames = new ConcurrentHashMap<>();
+
+	private final MethodHandle constructor;
+	private final ColumnBinder[] binders;
+
+	private RowMapper(MethodHandle constructor, ColumnBinder[] binders) {
+		this.constructor = constructor;
+		this.binders = binders;
+	}
+
+	@SuppressWarnings("unchecked")
+	public static <T> RowMapper<T> of(Class<T> clz, ResultSetMetaData rsMetaData) throws SQLException {
+		String[] columnLabels = new String[rsMetaData.getColumnCount()];
+		StringBuilder layout = new StringBuilder();
+		for (int i = 0; i < columnLabels.length; i++) {
+			columnLabels[i] = rsMetaData.getColumnLabel(i + 1);
+			layout.append(columnLabels[i]).append(',');
+		}
+		Map<String, RowMapper<?>> mappersByLayout = mappers.computeIfAbsent(clz, x -> new ConcurrentHashMap<>());
+		return (RowMapper<T>) mappersByLayout.computeIfAbsent(layout.toString(), x -> compile(clz, columnLabels));
+	}
+
+	// `field` for every field a mapper can set, i.e. the projection that fills an object of clz
+	public static List<String> getColumnNames(Class<?> clz) {
+		return columnNames.computeIfAbsent(clz, x -> {
+			List<String> list = new ArrayList<>();
+			for (java.lang.reflect.Field field : getFields(x).values()) {
+				if (!Modifier.isTransient(field.getModifiers())) {
+					list.add("`" + field.getName() + "`");
+				}
+			}
+			return Collections.unmodifiableList(list);
+		});
+	}
+
+	public T map(ResultSet rs) throws SQLException {
+		try {
+			Object target = constructor.invokeExact();
+			for (ColumnBinder binder : binders) {
+				binder.bind(rs, target);
+			}
+			@SuppressWarnings("unchecked")
+			T t = (T) target;
+			return t;
+		} catch (SQLException | RuntimeException e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	public List<T> mapAll(ResultSet rs) throws SQLException {
+		List<T> list = new ArrayList<>();
+		while (rs.next()) {
+			list.add(map(rs));
+		}
+		return list;
+	}
+
+	private static <T> RowMapper<T> compile(Class<T> clz, String[] columnLabels) {
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			Constructor<T> constructor = clz.getDeclaredConstructor();
+			constructor.setAccessible(true);
+			MethodHandle constructorHandle = lookup.unreflectConstructor(constructor)
+					.asType(MethodType.methodType(Object.class));
+			Map<String, java.lang.reflect.Field> fields = getFields(clz);
+			List<ColumnBinder> binders = new ArrayList<>();
+			for (int i = 0; i < columnLabels.length; i++) {
+				java.lang.reflect.Field field = fields.get(columnLabels[i].toLowerCase());
+				if (field == null) {
+					continue;
+				}
+				field.setAccessible(true);
+				binders.add(ColumnBinder.of(i + 1, field.getType(), lookup.unreflectSetter(field)));
+			}
+			return new RowMapper<>(constructorHandle, binders.toArray(new ColumnBinder[binders.size()]));
+		} catch (ReflectiveOperationException e) {
+			throw new RuntimeException("Cannot build row mapper for " + clz.getName(), e);
+		}
+	}
+
+	private static Map<String, java.lang.reflect.Field> getFields(Class<?> clz) {
+		Map<String, java.lang.reflect.Field> fields = new LinkedHashMap<>();
+		for (Class<?> c = clz; c != null && c != Object.class; c = c.getSuperclass()) {
+			for (java.lang.reflect.Field field : c.getDeclaredFields()) {
+				int modifiers = field.getModifiers();
+				if (Modifier.isStatic(modifiers) || Modifier.isFinal(modifiers) || field.isSynthetic()) {
+					continue;
+				}
+				fields.putIfAbsent(field.getName().toLowerCase(), field);
+			}
+		}
+		return fields;
+	}
+
+	private static abstract class ColumnBinder {
+		final int index;
+		final MethodHandle setter;
+
+		ColumnBinder(int index, MethodHandle setter, Class<?> valueType) {
+			this.index = index;
+			this.setter = setter.asType(MethodType.methodType(void.class, Object.class, valueType));
+		}
+
+		abstract void bind(ResultSet rs, Object target) throws Throwable;
+
+		static ColumnBinder of(int index, Class<?> type, MethodHandle setter) {
+			if (type == int.class) {
+				return new ColumnBinder(index, setter, int.class) {
+					@Override
+					void bind(ResultSet rs, Object target) throws Throwable {
+						this.setter.invokeExact(target, rs.getInt(this.index));
+					}
+				};
+			}
+			if (type == long.class) {
+				return new ColumnBinder(index, setter, long.class) {
+					@Override
+					void bind(ResultSet rs, Object target) throws Throwable {
+						this.setter.invokeExact(target, rs.getLong(this.index));
+					}
+				};
+			}
+			if (type == double.class) {
+				return new ColumnBinder(index, setter, double.class) {
+					@Override
+					void bind(ResultSet rs, Object target) throws Throwable {
+						this.setter.invokeExact(target, rs.getDouble(this.index));
+					}
+				};
+			}
+			if (type == boolean.class) {
+				return new ColumnBinder(index, setter, boolean.class) {
+					@Override
+					void bind(ResultSet rs, Object target) throws Throwable {
+						this.setter.invokeExact(target, rs.getBoolean(this.index));
+					}
+				};
+			}
+			if (type == Integer.class) {
+				return new ColumnBinder(index, setter, Integer.class) {
+					@Override
+					void bind(ResultSet rs, Object target) throws Throwable {
+						int value = rs.getInt(this.index);
+						this.setter.invokeExact(target, rs.wasNull() ? (Integer) null : Integer.valueOf(value));
+					}
+				};
+			}
+			if (type == Long.class) {
+				return new ColumnBinder(index, setter, Long.class) {
+					@Override
+					void bind(ResultSet rs, Object target) throws Throwable {
+						long value = rs.getLong(this.index);
+						this.setter.invokeExact(target, rs.wasNull() ? (Long) null : Long.valueOf(value));
+					}
+				};
+			}
+			if (type == String.class) {
+				return new ColumnBinder(index, setter, String.class) {
+					@Override
+					void bind(ResultSet rs, Object target) throws Throwable {
+						this.setter.invokeExact(target, rs.getString(this.index));
+					}
+				};
+			}
+			if (type == java.util.Date.class || type == java.sql.Timestamp.class) {
+				return new ColumnBinder(index, setter, java.sql.Timestamp.class) {
+					@Override
+					void bind(ResultSet rs, Object target) throws Throwable {
+						this.setter.invokeExact(target, rs.getTimestamp(this.index));
+					}
+				};
+			}
+			if (type == java.sql.Date.class) {
+				return new ColumnBinder(index, setter, java.sql.Date.class) {
+					@Override
+					void bind(ResultSet rs, Object target) throws Throwable {
+						this.setter.invokeExact(target, rs.getDate(this.index));
+					}
+				};
+			}
+			if (type == BigDecimal.class) {
+				return new ColumnBinder(index, setter, BigDecimal.class) {
+					@Override
+					void bind(ResultSet rs, Object target) throws Throwable {
+						this.setter.invokeExact(target, rs.getBigDecimal(this.index));
+					}
+				};
+			}
+			Class<?> boxedType = type.isPrimitive() ? MethodType.methodType(type).wrap().returnType() : type;
+			return new ColumnBinder(index, setter, Object.class) {
+				@Override
+				void bind(ResultSet rs, Object target) throws Throwable {
+					Object value = rs.getObject(this.index);
+					if (value == null && type.isPrimitive()) {
+						return;
+					}
+					if (value != null && !boxedType.isInstance(value)) {
+						value = rs.getObject(this.index, boxedType);
+					}
+					this.setter.invokeExact(target, value);
+				}
+			};
+		}
+	}
+}
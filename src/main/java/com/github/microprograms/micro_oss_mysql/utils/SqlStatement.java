@@ -0,0 +1,35 @@
+package com.github.microprograms.micro_oss_mysql.utils;
+
+import java.util.Collections;
+import java.util.List;
+
+public class SqlStatement {
+	private String sql;
+	private List<Object> params;
+
+	public SqlStatement(String sql) {
+		this(sql, null);
+	}
+
+	public SqlStatement(String sql, List<Object> params) {
+		this.sql = sql;
+		this.params = params;
+	}
+
+	public String getSql() {
+		return sql;
+	}
+
+	public List<Object> getParams() {
+		return params == null ? Collections.emptyList() : params;
+	}
+
+	public boolean isPrepared() {
+		return params != null;
+	}
+
+	@Override
+	public String toString() {
+		return isPrepared() ? sql + " " + params : sql;
+	}
+}
@@ -0,0 +1,136 @@
+package com.github.microprograms.micro_oss_mysql.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Iterator;
+import java.util.List;
+
+import com.github.microprograms.micro_oss_core.model.Entity;
+import com.github.microprograms.micro_oss_core.model.Field;
+
+/**
+ * Serializes entities one row at a time into the tab-separated format read by
+ * {@code LOAD DATA} with its default FIELDS/LINES options: UTF-8, fields
+ * separated by tab, rows ended by newline, NULL as \N, and backslash, tab,
+ * newline, carriage return and NUL escaped with a backslash. Every entity must
+ * have the fields of the first one in the same order.
+ */
+public class TsvEntityInputStream extends InputStream {
+	private final Entity first;
+	private final Iterator<Entity> rest;
+	private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+	private final ByteArrayOutputStream row = new ByteArrayOutputStream(256);
+	private byte[] buffer = new byte[0];
+	private int position;
+	private int rowCount;
+	private boolean firstWritten;
+
+	public TsvEntityInputStream(Entity first, Iterator<Entity> rest) {
+		this.first = first;
+		this.rest = rest;
+	}
+
+	// rows serialized so far
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	@Override
+	public int read() {
+		if (position >= buffer.length && !nextRow()) {
+			return -1;
+		}
+		return buffer[position++] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) {
+		if (len == 0) {
+			return 0;
+		}
+		int n = 0;
+		while (n < len) {
+			if (position >= buffer.length && !nextRow()) {
+				break;
+			}
+			int chunk = Math.min(len - n, buffer.length - position);
+			System.arraycopy(buffer, position, b, off + n, chunk);
+			position += chunk;
+			n += chunk;
+		}
+		return n == 0 ? -1 : n;
+	}
+
+	private boolean nextRow() {
+		Entity entity;
+		if (!firstWritten) {
+			firstWritten = true;
+			entity = first;
+		} else if (rest.hasNext()) {
+			entity = rest.next();
+			MysqlUtils.checkSameColumns(first, entity);
+		} else {
+			return false;
+		}
+		row.reset();
+		List<Field> fields = entity.getFields();
+		for (int i = 0; i < fields.size(); i++) {
+			if (i > 0) {
+				row.write('\t');
+			}
+			writeValue(fields.get(i).getValue());
+		}
+		row.write('\n');
+		buffer = row.toByteArray();
+		position = 0;
+		rowCount++;
+		return true;
+	}
+
+	private void writeValue(Object value) {
+		if (value == null) {
+			row.write('\\');
+			row.write('N');
+			return;
+		}
+		byte[] bytes;
+		if (value instanceof byte[]) {
+			bytes = (byte[]) value;
+		} else if (value instanceof Boolean) {
+			bytes = ((Boolean) value) ? new byte[] { '1' } : new byte[] { '0' };
+		} else if (value instanceof java.util.Date && !(value instanceof java.sql.Date)
+				&& !(value instanceof java.sql.Time)) {
+			bytes = dateFormat.format((java.util.Date) value).getBytes(StandardCharsets.UTF_8);
+		} else {
+			bytes = value.toString().getBytes(StandardCharsets.UTF_8);
+		}
+		for (byte x : bytes) {
+			switch (x) {
+			case '\\':
+				row.write('\\');
+				row.write('\\');
+				break;
+			case '\t':
+				row.write('\\');
+				row.write('t');
+				break;
+			case '\n':
+				row.write('\\');
+				row.write('n');
+				break;
+			case '\r':
+				row.write('\\');
+				row.write('r');
+				break;
+			case 0:
+				row.write('\\');
+				row.write('0');
+				break;
+			default:
+				row.write(x);
+			}
+		}
+	}
+}
@@ -0,0 +1,107 @@
+package com.github.microprograms.micro_oss_mysql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class AsyncMicroOssProviderTest {
+
+	@Test
+	public void rejectsAtOnceWithoutTimeout() throws Exception {
+		try (AsyncMicroOssProvider async = new AsyncMicroOssProvider(null, 1)) {
+			CountDownLatch release = new CountDownLatch(1);
+			CompletableFuture<Integer> running = async.submit(() -> block(release, 1));
+			assertRejected(async.submit(() -> 2));
+			release.countDown();
+			assertEquals(1, (int) running.get(5, TimeUnit.SECONDS));
+			awaitIdle(async);
+		}
+	}
+
+	@Test
+	public void rejectsWhenWaitingQueueIsFull() throws Exception {
+		try (AsyncMicroOssProvider async = new AsyncMicroOssProvider(null, 1)) {
+			async.setAcquireTimeoutMillis(10000);
+			async.setMaxWaiting(1);
+			CountDownLatch release = new CountDownLatch(1);
+			CompletableFuture<Integer> running = async.submit(() -> block(release, 1));
+			CompletableFuture<Integer> waiter = async.submit(() -> 2);
+			assertRejected(async.submit(() -> 3));
+			assertEquals(1, async.getWaiting());
+			release.countDown();
+			assertEquals(1, (int) running.get(5, TimeUnit.SECONDS));
+			assertEquals(2, (int) waiter.get(5, TimeUnit.SECONDS));
+			assertEquals(0, async.getWaiting());
+		}
+	}
+
+	@Test
+	public void waiterTimesOut() throws Exception {
+		try (AsyncMicroOssProvider async = new AsyncMicroOssProvider(null, 1)) {
+			async.setAcquireTimeoutMillis(50);
+			CountDownLatch release = new CountDownLatch(1);
+			CompletableFuture<Integer> running = async.submit(() -> block(release, 1));
+			assertRejected(async.submit(() -> 2));
+			assertEquals(0, async.getWaiting());
+			release.countDown();
+			running.get(5, TimeUnit.SECONDS);
+		}
+	}
+
+	@Test
+	public void neverExceedsMaxInFlight() throws Exception {
+		int maxInFlight = 3;
+		int calls = 40;
+		try (AsyncMicroOssProvider async = new AsyncMicroOssProvider(null, maxInFlight)) {
+			async.setAcquireTimeoutMillis(10000);
+			async.setMaxWaiting(calls);
+			AtomicInteger running = new AtomicInteger();
+			AtomicInteger maxRunning = new AtomicInteger();
+			CompletableFuture<?>[] futures = new CompletableFuture<?>[calls];
+			for (int i = 0; i < calls; i++) {
+				futures[i] = async.submit(() -> {
+					int now = running.incrementAndGet();
+					maxRunning.accumulateAndGet(now, Math::max);
+					Thread.sleep(2);
+					running.decrementAndGet();
+					return now;
+				});
+			}
+			CompletableFuture.allOf(futures).get(10, TimeUnit.SECONDS);
+			assertTrue(maxRunning.get() <= maxInFlight);
+			awaitIdle(async);
+			assertEquals(0, async.getWaiting());
+		}
+	}
+
+	private static int block(CountDownLatch release, int result) throws InterruptedException {
+		release.await(5, TimeUnit.SECONDS);
+		return result;
+	}
+
+	// a slot is released just after the call's future completes
+	private static void awaitIdle(AsyncMicroOssProvider async) throws InterruptedException {
+		for (int i = 0; i < 500 && async.getInFlight() > 0; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(0, async.getInFlight());
+	}
+
+	private static void assertRejected(CompletableFuture<?> future) throws Exception {
+		try {
+			future.get(5, TimeUnit.SECONDS);
+			fail("expected a rejection");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof RejectedExecutionException);
+		}
+	}
+}
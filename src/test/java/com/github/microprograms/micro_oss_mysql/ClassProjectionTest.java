@@ -0,0 +1,47 @@
+package com.github.microprograms.micro_oss_mysql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+
+import com.github.microprograms.micro_oss_core.MicroOssConfig;
+import com.github.microprograms.micro_oss_core.model.dml.query.Condition;
+import com.github.microprograms.micro_oss_core.model.dml.query.SelectCommand;
+import com.github.microprograms.micro_oss_core.model.dml.query.Sort;
+import com.github.microprograms.micro_oss_mysql.utils.MysqlUtils;
+
+import org.junit.Test;
+
+public class ClassProjectionTest {
+
+	public static class Order {
+		private String id;
+		private long amount;
+		// filled in by the caller, there is no such column
+		private String displayName;
+	}
+
+	private final RawMysqlMicroOssProvider provider = new RawMysqlMicroOssProvider((MicroOssConfig) null) {
+	};
+
+	@Test
+	public void selectsAllColumnsByDefault() {
+		assertNull(provider._getFieldNames(Order.class, null, null));
+		SelectCommand command = new SelectCommand("t_order", provider._getFieldNames(Order.class, null, null),
+				Condition.build("id=", "a"), null, null);
+		assertEquals("SELECT * FROM t_order WHERE id= 'a';", MysqlUtils.buildSql(command));
+	}
+
+	@Test
+	public void keepsExplicitFieldNames() {
+		assertEquals(Arrays.asList("id"), provider._getFieldNames(Order.class, Arrays.asList("id"), null));
+	}
+
+	@Test
+	public void projectsFieldsAndSortsWhenEnabled() {
+		provider.setUseClassProjection(true);
+		assertEquals(Arrays.asList("`id`", "`amount`", "`displayName`", "created_at"), provider._getFieldNames(
+				Order.class, null, Arrays.asList(Sort.build("created_at", Sort.TypeEnum.desc))));
+	}
+}
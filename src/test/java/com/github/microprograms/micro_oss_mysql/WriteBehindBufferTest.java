@@ -0,0 +1,208 @@
+package com.github.microprograms.micro_oss_mysql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.sql.DataSource;
+
+import com.github.microprograms.micro_oss_core.MicroOssConfig;
+import com.github.microprograms.micro_oss_core.exception.MicroOssException;
+import com.github.microprograms.micro_oss_core.model.Field;
+import com.github.microprograms.micro_oss_mysql.metrics.OperationEvent;
+import com.github.microprograms.micro_oss_mysql.metrics.OperationListener;
+import com.github.microprograms.micro_oss_mysql.metrics.OperationType;
+
+import org.junit.Test;
+
+public class WriteBehindBufferTest {
+	private static final long NEVER = 3600000;
+
+	private final FakeDatabase database = new FakeDatabase();
+	private final MysqlMicroOssProvider provider = new MysqlMicroOssProvider(database.dataSource,
+			new MicroOssConfig());
+
+	@Test
+	public void mergesLaterValuesOverEarlierOnes() throws Exception {
+		List<OperationEvent> events = new ArrayList<>();
+		provider.setOperationListener(new OperationListener() {
+			@Override
+			public void onOperation(OperationEvent event) {
+				events.add(event);
+			}
+		});
+		WriteBehindBuffer buffer = new WriteBehindBuffer(provider, 100, NEVER);
+		buffer.updateObject("user", "id", 1, fields("a", 1, "b", 1));
+		buffer.updateObject("user", "id", 2, fields("a", 2));
+		buffer.updateObject("user", "id", 1, fields("b", 2, "c", 3));
+		buffer.flush();
+		assertEquals(Arrays.asList(Arrays.asList(1, 2, 3, 1)), database.rows(0));
+		assertEquals(Arrays.asList(Arrays.asList(2, 2)), database.rows(1));
+		// one update operation per batch
+		assertEquals(2, events.size());
+		assertEquals(OperationType.update, events.get(0).getType());
+		assertEquals(database.batches.get(0).sql, events.get(0).getSql());
+		assertEquals(1, events.get(0).getRows());
+		assertEquals(0, buffer.getPendingKeys());
+		buffer.close();
+	}
+
+	@Test
+	public void requeuesFailedWritesUnderNewerValues() throws Exception {
+		WriteBehindBuffer buffer = new WriteBehindBuffer(provider, 100, NEVER);
+		buffer.updateObject("user", "id", 1, fields("a", 1));
+		buffer.updateObject("user", "id", 2, fields("a", 2));
+		database.failing = true;
+		// written while the failing flush is in progress
+		database.onExecute = () -> {
+			buffer.updateObject("user", "id", 3, fields("a", 30));
+			buffer.updateObject("user", "id", 1, fields("a", 10));
+		};
+		try {
+			buffer.flush();
+			fail("expected the flush to fail");
+		} catch (MicroOssException e) {
+			assertTrue(e.getCause() instanceof SQLException);
+		}
+		assertEquals(3, buffer.getPendingKeys());
+		database.failing = false;
+		database.onExecute = null;
+		buffer.flush();
+		// drained keys first, each with the newest value
+		assertEquals(Arrays.asList(Arrays.asList(10, 1), Arrays.asList(2, 2), Arrays.asList(30, 3)),
+				database.rows(database.batches.size() - 1));
+		buffer.close();
+	}
+
+	@Test
+	public void rejectsNewKeysWhenFull() throws Exception {
+		database.failing = true;
+		WriteBehindBuffer buffer = new WriteBehindBuffer(provider, 2, NEVER);
+		buffer.setOfferTimeoutMillis(0);
+		buffer.updateObject("user", "id", 1, fields("a", 1));
+		buffer.updateObject("user", "id", 2, fields("a", 2));
+		assertRejected(buffer, 3);
+		// a pending key still takes updates
+		buffer.updateObject("user", "id", 1, fields("a", 10));
+		buffer.setOfferTimeoutMillis(100);
+		long start = System.nanoTime();
+		assertRejected(buffer, 3);
+		assertTrue(System.nanoTime() - start >= 90000000L);
+		assertEquals(2, buffer.getPendingKeys());
+		database.failing = false;
+		buffer.close();
+		assertEquals(0, buffer.getPendingKeys());
+	}
+
+	private static void assertRejected(WriteBehindBuffer buffer, Object keyValue) {
+		try {
+			buffer.updateObject("user", "id", keyValue, fields("a", keyValue));
+			fail("expected a full buffer to reject a new key");
+		} catch (MicroOssException e) {
+			assertTrue(e.getCause() instanceof RejectedExecutionException);
+		}
+	}
+
+	private static List<Field> fields(Object... namesAndValues) {
+		List<Field> fields = new ArrayList<>();
+		for (int i = 0; i < namesAndValues.length; i += 2) {
+			fields.add(new Field((String) namesAndValues[i], namesAndValues[i + 1]));
+		}
+		return fields;
+	}
+
+	private interface Hook {
+		void run() throws Exception;
+	}
+
+	// records the parameters of every executed batch, or fails executeBatch while failing is set
+	private static class FakeDatabase {
+		final List<Batch> batches = new ArrayList<>();
+		volatile boolean failing;
+		volatile Hook onExecute;
+		final DataSource dataSource = proxy(DataSource.class, (method, args) -> {
+			if ("getConnection".equals(method)) {
+				return newConnection();
+			}
+			throw new UnsupportedOperationException(method);
+		});
+
+		synchronized List<List<Object>> rows(int batch) {
+			return batches.get(batch).rows;
+		}
+
+		private Connection newConnection() {
+			return proxy(Connection.class, (method, args) -> {
+				switch (method) {
+				case "prepareStatement":
+					return newStatement((String) args[0]);
+				case "close":
+					return null;
+				default:
+					throw new UnsupportedOperationException(method);
+				}
+			});
+		}
+
+		private PreparedStatement newStatement(String sql) {
+			Batch batch = new Batch(sql);
+			List<Object> row = new ArrayList<>();
+			return proxy(PreparedStatement.class, (method, args) -> {
+				switch (method) {
+				case "setObject":
+					row.add(args[1]);
+					return null;
+				case "addBatch":
+					batch.rows.add(new ArrayList<>(row));
+					row.clear();
+					return null;
+				case "executeBatch":
+					Hook hook = onExecute;
+					if (hook != null) {
+						hook.run();
+					}
+					if (failing) {
+						throw new SQLException("Deadlock found", "40001", 1213);
+					}
+					synchronized (this) {
+						batches.add(batch);
+					}
+					int[] counts = new int[batch.rows.size()];
+					Arrays.fill(counts, 1);
+					return counts;
+				case "close":
+					return null;
+				default:
+					throw new UnsupportedOperationException(method);
+				}
+			});
+		}
+	}
+
+	private static class Batch {
+		final String sql;
+		final List<List<Object>> rows = new ArrayList<>();
+
+		Batch(String sql) {
+			this.sql = sql;
+		}
+	}
+
+	private interface Handler {
+		Object invoke(String method, Object[] args) throws Exception;
+	}
+
+	private static <T> T proxy(Class<T> type, Handler handler) {
+		return type.cast(Proxy.newProxyInstance(WriteBehindBufferTest.class.getClassLoader(), new Class<?>[] { type },
+				(proxy, method, args) -> handler.invoke(method.getName(), args)));
+	}
+}
@@ -0,0 +1,24 @@
+package com.github.microprograms.micro_oss_mysql.metrics;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class SlowQueryListenerTest {
+
+	@Test
+	public void replacesLiteralsWithPlaceholders() {
+		assertEquals("SELECT id,t2 FROM t_order1 WHERE (name= ? AND amount> ? AND id=?) LIMIT ?,?;",
+				SlowQueryListener.normalizeSql(
+						"SELECT id,t2 FROM t_order1 WHERE (name= 'it''s 42' AND amount> 1.5e3 AND id=-7) LIMIT 20,10;"));
+		assertEquals("SELECT * FROM `log_2024` WHERE created_at> ? AND day= ? AND flags= ?;",
+				SlowQueryListener.normalizeSql("SELECT * FROM `log_2024` WHERE created_at> '2024-01-31 10:00:00'"
+						+ " AND day= DATE '2024-01-31' AND flags= 0x1F;"));
+	}
+
+	@Test
+	public void givesInlineAndBoundStatementsOneShape() {
+		assertEquals(SlowQueryListener.normalizeSql("SELECT COUNT(*) AS count FROM t WHERE a= ? AND b= ?;"),
+				SlowQueryListener.normalizeSql("SELECT COUNT(*) AS count FROM t WHERE a= 12 AND b= 'x';"));
+	}
+}
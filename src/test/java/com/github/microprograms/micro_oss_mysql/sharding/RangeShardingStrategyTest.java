@@ -0,0 +1,29 @@
+package com.github.microprograms.micro_oss_mysql.sharding;
+
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class RangeShardingStrategyTest {
+
+	@Test
+	public void routesKeysOfAnotherNumberType() {
+		RangeShardingStrategy strategy = new RangeShardingStrategy(Arrays.asList(100L, 200L));
+		assertEquals(0, strategy.getShard(99, 3));
+		assertEquals(1, strategy.getShard(100, 3));
+		assertEquals(1, strategy.getShard(new BigDecimal("199.5"), 3));
+		assertEquals(2, strategy.getShard(200.0, 3));
+		assertEquals(2, strategy.getShard(Long.MAX_VALUE, 3));
+	}
+
+	@Test
+	public void routesStringKeys() {
+		RangeShardingStrategy strategy = new RangeShardingStrategy(Arrays.asList("h", "p"));
+		assertEquals(0, strategy.getShard("apple", 3));
+		assertEquals(1, strategy.getShard("h", 3));
+		assertEquals(2, strategy.getShard("zebra", 3));
+	}
+}
@@ -0,0 +1,229 @@
+package com.github.microprograms.micro_oss_mysql.sharding;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Statement;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import javax.sql.DataSource;
+
+import com.github.microprograms.micro_oss_core.MicroOssConfig;
+import com.github.microprograms.micro_oss_core.MicroOssProvider;
+import com.github.microprograms.micro_oss_core.Transaction;
+import com.github.microprograms.micro_oss_core.exception.MicroOssException;
+import com.github.microprograms.micro_oss_core.model.Entity;
+import com.github.microprograms.micro_oss_core.model.Field;
+import com.github.microprograms.micro_oss_core.model.dml.query.Condition;
+import com.github.microprograms.micro_oss_core.model.dml.query.PagerRequest;
+import com.github.microprograms.micro_oss_core.model.dml.query.SelectCommand;
+import com.github.microprograms.micro_oss_core.model.dml.query.Sort;
+
+import org.junit.Test;
+
+public class ShardedMysqlMicroOssProviderTest {
+	private static final List<Sort> SORTS = Arrays.asList(Sort.build("grade", Sort.TypeEnum.desc),
+			Sort.build("name", Sort.TypeEnum.asc));
+
+	// each shard holds its rows already ordered by SORTS, as MySQL returns them
+	private final FakeShard shard0 = new FakeShard(row(1, 3, "b"), row(2, 2, "a"), row(3, 1, "C"));
+	private final FakeShard shard1 = new FakeShard(row(4, 3, "a"), row(5, 2, "B"), row(6, 2, "c"));
+
+	@Test
+	public void mergesShardsBySorts() throws Exception {
+		try (ShardedMysqlMicroOssProvider provider = newProvider()) {
+			assertEquals(Arrays.asList(4, 1, 2, 5, 6, 3), ids(provider.queryEntities(select(null, null))));
+		}
+	}
+
+	@Test
+	public void failsToMergeStringsWithoutCollator() throws Exception {
+		try (ShardedMysqlMicroOssProvider provider = newProvider()) {
+			provider.setCollator(null);
+			provider.queryEntities(select(null, null));
+			fail("expected a missing Collator to fail");
+		} catch (RuntimeException e) {
+			assertTrue(e.getMessage().contains("Collator"));
+		}
+	}
+
+	@Test
+	public void cutsPagesAfterMerging() throws Exception {
+		try (ShardedMysqlMicroOssProvider provider = newProvider()) {
+			assertEquals(Arrays.asList(4, 1), ids(provider.queryEntities(select(null, new PagerRequest(0, 2)))));
+			assertEquals(Arrays.asList(2, 5), ids(provider.queryEntities(select(null, new PagerRequest(1, 2)))));
+			assertEquals(Arrays.asList(6, 3), ids(provider.queryEntities(select(null, new PagerRequest(2, 2)))));
+			assertEquals(Arrays.asList(), ids(provider.queryEntities(select(null, new PagerRequest(3, 2)))));
+			assertEquals(Arrays.asList(), ids(provider.queryEntities(select(null, new PagerRequest(9, 2)))));
+			// page 1 of 2 needs the first 4 rows of every shard
+			assertTrue(shard0.sqls.get(1).endsWith(" LIMIT 4;"));
+			assertTrue(shard1.sqls.get(1).endsWith(" LIMIT 4;"));
+		}
+	}
+
+	@Test
+	public void routesEqualsInsideAnd() throws Exception {
+		try (ShardedMysqlMicroOssProvider provider = newProvider()) {
+			// HashShardingStrategy puts 5 on shard 1 of 2
+			provider.queryEntities(
+					select(Condition.and(Condition.build("grade>", 0), Condition.build("id=", 5L)), null));
+			assertEquals(0, shard0.sqls.size());
+			assertEquals(1, shard1.sqls.size());
+			provider.queryEntities(
+					select(Condition.or(Condition.build("id=", 5L), Condition.build("grade>", 0)), null));
+			assertEquals(1, shard0.sqls.size());
+			assertEquals(2, shard1.sqls.size());
+		}
+	}
+
+	@Test
+	public void rejectsTransactionSpanningShards() throws Exception {
+		try (ShardedMysqlMicroOssProvider provider = newProvider()) {
+			provider.execute(new Transaction() {
+				@Override
+				public String getTransactionId() {
+					return "t";
+				}
+
+				@Override
+				public void execute(MicroOssProvider microOssProvider) throws Exception {
+					fail("must not run");
+				}
+			});
+			fail("expected a multi-shard transaction to be rejected");
+		} catch (MicroOssException e) {
+			assertTrue(e.getCause() instanceof UnsupportedOperationException);
+		}
+		assertEquals(0, shard0.connections + shard1.connections);
+	}
+
+	private ShardedMysqlMicroOssProvider newProvider() {
+		ShardedMysqlMicroOssProvider provider = new ShardedMysqlMicroOssProvider(
+				Arrays.asList(shard0.dataSource, shard1.dataSource), "id", new HashShardingStrategy(),
+				new MicroOssConfig());
+		// "a" < "B" < "b" < "C" as in a case-insensitive collation, unlike String.compareTo
+		provider.setCollator(Collator.getInstance(Locale.ROOT));
+		return provider;
+	}
+
+	private static SelectCommand select(Condition where, PagerRequest pager) {
+		return new SelectCommand("student", null, where, SORTS, pager);
+	}
+
+	private static Object[] row(int id, int grade, String name) {
+		return new Object[] { id, grade, name };
+	}
+
+	private static List<Integer> ids(List<Entity> entities) {
+		List<Integer> ids = new ArrayList<>();
+		for (Entity x : entities) {
+			for (Field field : x.getFields()) {
+				if ("id".equals(field.getName())) {
+					ids.add((Integer) field.getValue());
+				}
+			}
+		}
+		return ids;
+	}
+
+	// answers every query with its rows, ignoring WHERE and LIMIT, and records the SQL
+	private static class FakeShard {
+		static final String[] COLUMNS = { "id", "grade", "name" };
+		final List<Object[]> rows;
+		final List<String> sqls = new ArrayList<>();
+		int connections;
+		final DataSource dataSource;
+
+		FakeShard(Object[]... rows) {
+			this.rows = Arrays.asList(rows);
+			this.dataSource = proxy(DataSource.class, (method, args) -> {
+				if ("getConnection".equals(method)) {
+					synchronized (this) {
+						connections++;
+					}
+					return newConnection();
+				}
+				throw new UnsupportedOperationException(method);
+			});
+		}
+
+		private Connection newConnection() {
+			return proxy(Connection.class, (method, args) -> {
+				switch (method) {
+				case "prepareStatement":
+					return newStatement(PreparedStatement.class, (String) args[0]);
+				case "createStatement":
+					return newStatement(Statement.class, null);
+				case "close":
+					return null;
+				default:
+					throw new UnsupportedOperationException(method);
+				}
+			});
+		}
+
+		private <S extends Statement> S newStatement(Class<S> type, String preparedSql) {
+			return proxy(type, (method, args) -> {
+				switch (method) {
+				case "setObject":
+				case "close":
+					return null;
+				case "executeQuery":
+					synchronized (this) {
+						sqls.add(preparedSql != null ? preparedSql : (String) args[0]);
+					}
+					return newResultSet();
+				default:
+					throw new UnsupportedOperationException(method);
+				}
+			});
+		}
+
+		private ResultSet newResultSet() {
+			int[] cursor = { -1 };
+			ResultSetMetaData metaData = proxy(ResultSetMetaData.class, (method, args) -> {
+				switch (method) {
+				case "getColumnCount":
+					return COLUMNS.length;
+				case "getColumnLabel":
+					return COLUMNS[(Integer) args[0] - 1];
+				default:
+					throw new UnsupportedOperationException(method);
+				}
+			});
+			return proxy(ResultSet.class, (method, args) -> {
+				switch (method) {
+				case "getMetaData":
+					return metaData;
+				case "next":
+					return ++cursor[0] < rows.size();
+				case "getObject":
+					return rows.get(cursor[0])[(Integer) args[0] - 1];
+				case "close":
+					return null;
+				default:
+					throw new UnsupportedOperationException(method);
+				}
+			});
+		}
+	}
+
+	private interface Handler {
+		Object invoke(String method, Object[] args) throws Exception;
+	}
+
+	private static <T> T proxy(Class<T> type, Handler handler) {
+		return type.cast(Proxy.newProxyInstance(ShardedMysqlMicroOssProviderTest.class.getClassLoader(),
+				new Class<?>[] { type }, (proxy, method, args) -> handler.invoke(method.getName(), args)));
+	}
+}
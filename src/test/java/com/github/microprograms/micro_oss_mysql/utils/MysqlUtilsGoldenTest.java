@@ -0,0 +1,183 @@
+package com.github.microprograms.micro_oss_mysql.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+import com.github.microprograms.micro_oss_core.model.Entity;
+import com.github.microprograms.micro_oss_core.model.Field;
+import com.github.microprograms.micro_oss_core.model.FieldDefinition;
+import com.github.microprograms.micro_oss_core.model.FieldDefinition.FieldTypeEnum;
+import com.github.microprograms.micro_oss_core.model.TableDefinition;
+import com.github.microprograms.micro_oss_core.model.ddl.CreateTableCommand;
+import com.github.microprograms.micro_oss_core.model.ddl.DropTableCommand;
+import com.github.microprograms.micro_oss_core.model.dml.query.Condition;
+import com.github.microprograms.micro_oss_core.model.dml.query.PagerRequest;
+import com.github.microprograms.micro_oss_core.model.dml.query.SelectCommand;
+import com.github.microprograms.micro_oss_core.model.dml.query.SelectCountCommand;
+import com.github.microprograms.micro_oss_core.model.dml.query.Sort;
+import com.github.microprograms.micro_oss_core.model.dml.update.DeleteCommand;
+import com.github.microprograms.micro_oss_core.model.dml.update.InsertCommand;
+import com.github.microprograms.micro_oss_core.model.dml.update.UpdateCommand;
+import com.github.microprograms.micro_oss_mysql.model.dml.InsertBatchCommand;
+import com.github.microprograms.micro_oss_mysql.model.dml.UpsertCommand;
+
+import org.junit.Test;
+
+/**
+ * Renders a fixed set of commands, inline and with bound parameters, and
+ * compares the result with mysql-utils-golden.txt, which was produced by the
+ * StringBuffer/String.format renderer that MysqlUtils replaced.
+ */
+public class MysqlUtilsGoldenTest {
+	private static final String MULTI_BYTE = "中文'😀";
+
+	@Test
+	public void rendersGoldenSql() throws IOException {
+		assertEquals(readGoldenFile(), render());
+	}
+
+	@Test
+	public void reusesBuilderAfterLargeStatement() {
+		String expected = MysqlUtils.buildSql(select(where(), sorts(), new PagerRequest(1, 10)));
+		List<Entity> entities = new ArrayList<>();
+		for (int i = 0; i < 4000; i++) {
+			entities.add(new Entity("big", Arrays.asList(new Field("id", i), new Field("text", "some text " + i))));
+		}
+		// about 100K chars, more than the builder kept for reuse
+		MysqlUtils.buildStatements(new InsertBatchCommand(entities), 0, 1 << 20, false);
+		assertEquals(expected, MysqlUtils.buildSql(select(where(), sorts(), new PagerRequest(1, 10))));
+	}
+
+	static String render() {
+		StringBuilder sb = new StringBuilder();
+		// conditions
+		for (Condition condition : conditions()) {
+			add(sb, "condition", params -> MysqlUtils.parseCondition(condition, params));
+			add(sb, "delete", params -> MysqlUtils.buildSql(new DeleteCommand("t_delete", condition), params));
+			add(sb, "count", params -> MysqlUtils.buildSql(new SelectCountCommand("t_count", condition), params));
+		}
+		// select
+		SelectCommand select = select(where(), sorts(), new PagerRequest(2, 20));
+		add(sb, "select", params -> MysqlUtils.buildSql(select, params));
+		add(sb, "select limit", params -> MysqlUtils.buildSql(select, 50, params));
+		add(sb, "select window count", params -> MysqlUtils.buildWindowCountSql(select, params));
+		add(sb, "select count", params -> MysqlUtils.buildCountSql(select, params));
+		SelectCommand selectAll = new SelectCommand("t_select", null, Condition.and(), new ArrayList<>(), null);
+		add(sb, "select all", params -> MysqlUtils.buildSql(selectAll, params));
+		add(sb, "sorts", params -> MysqlUtils.parseSorts(sorts()));
+		add(sb, "pager", params -> MysqlUtils.parsePager(new PagerRequest(3, 15)));
+		// keyset
+		List<Sort> asc = Arrays.asList(Sort.build("id", Sort.TypeEnum.asc));
+		List<Sort> desc = Arrays.asList(Sort.build("amount", Sort.TypeEnum.desc), Sort.build("id", Sort.TypeEnum.desc));
+		List<Sort> mixed = Arrays.asList(Sort.build("amount", Sort.TypeEnum.desc), Sort.build("name", Sort.TypeEnum.asc),
+				Sort.build("id", Sort.TypeEnum.asc));
+		add(sb, "keyset first page", params -> MysqlUtils.buildKeysetSql(select(where(), asc, null), null, 10, params));
+		add(sb, "keyset asc", params -> MysqlUtils.buildKeysetSql(select(where(), asc, null), new Object[] { 42 }, 10,
+				params));
+		add(sb, "keyset desc", params -> MysqlUtils.buildKeysetSql(select(null, desc, null),
+				new Object[] { Long.MIN_VALUE, "it's" }, 10, params));
+		add(sb, "keyset mixed", params -> MysqlUtils.buildKeysetSql(select(where(), mixed, null),
+				new Object[] { new BigDecimal("12.50"), MULTI_BYTE, 7L }, 10, params));
+		add(sb, "keyset blank where", params -> MysqlUtils.buildKeysetSql(
+				select(Condition.and(Condition.and(), Condition.or()), mixed, null), new Object[] { 1, "a", 2 }, 10,
+				params));
+		// writes
+		add(sb, "insert", params -> MysqlUtils.buildSql(new InsertCommand(new Entity("t_insert", row(1))), params));
+		add(sb, "update", params -> MysqlUtils.buildSql(new UpdateCommand("t_update", row(2), where()), params));
+		add(sb, "keyed update", params -> MysqlUtils.buildKeyedUpdateSql("t_update", Arrays.asList("name", "note"),
+				"id"));
+		add(sb, "load data", params -> MysqlUtils.buildLoadDataSql("t_load", Arrays.asList("id", "name")));
+		for (boolean bind : new boolean[] { false, true }) {
+			// at most 2 rows per statement, fewer once a statement reaches 160 bytes
+			addStatements(sb, "batch insert " + bind,
+					MysqlUtils.buildStatements(new InsertBatchCommand(rows(5)), 2, 160, bind));
+			addStatements(sb, "upsert derived " + bind, MysqlUtils.buildStatements(
+					new UpsertCommand(rows(3), Arrays.asList("ID")), 0, 1 << 20, bind));
+			addStatements(sb, "upsert explicit " + bind, MysqlUtils.buildStatements(
+					new UpsertCommand(rows(3), Arrays.asList("id"), Arrays.asList("name", "note")), 0, 150, bind));
+			addStatements(sb, "upsert nothing to update " + bind, MysqlUtils.buildStatements(
+					new UpsertCommand(rows(2), Arrays.asList("id"), new ArrayList<>()), 0, 1 << 20, bind));
+		}
+		// ddl
+		add(sb, "drop table", params -> MysqlUtils.buildSql(new DropTableCommand("t_drop")));
+		add(sb, "create table", params -> MysqlUtils.buildSql(new CreateTableCommand(new TableDefinition("t_create",
+				"it's a table", Arrays.asList(new FieldDefinition("id", "key", FieldTypeEnum.string_type, 1),
+						new FieldDefinition("name", "O'Brien's " + MULTI_BYTE, FieldTypeEnum.string_type, 0),
+						new FieldDefinition("amount", null, FieldTypeEnum.long_type, 0))))));
+		return sb.toString();
+	}
+
+	private static List<Condition> conditions() {
+		return Arrays.asList(null, Condition.build("name=", "it's"), Condition.build(null, "null key"),
+				Condition.build("note=", null), Condition.build("title=", MULTI_BYTE),
+				Condition.build("id>", Long.MIN_VALUE), Condition.build("amount<", new BigDecimal("1.50")),
+				Condition.build("enabled=", true), Condition.raw("deleted_at is", "null"),
+				Condition.raw(" ", ""), Condition.and(), Condition.and(Condition.and(), Condition.or()),
+				Condition.and(null, Condition.build("a=", 1)),
+				Condition.or(Condition.build("a=", 1), Condition.and(Condition.build("b=", "x'y"),
+						Condition.or(Condition.raw("c is", "null"), Condition.and())), Condition.or(),
+						Condition.raw(" ", ""), Condition.build("d in", "('x','y')")),
+				where());
+	}
+
+	private static Condition where() {
+		return Condition.and(Condition.build("name=", "it's"),
+				Condition.or(Condition.build("amount>", 100L), Condition.build("id=", Integer.MIN_VALUE)));
+	}
+
+	private static List<Sort> sorts() {
+		return Arrays.asList(Sort.build("amount", Sort.TypeEnum.desc), Sort.build("id", Sort.TypeEnum.asc));
+	}
+
+	private static SelectCommand select(Condition where, List<Sort> sorts, PagerRequest pager) {
+		return new SelectCommand("t_select", Arrays.asList("id", "name", "amount"), where, sorts, pager);
+	}
+
+	private static List<Field> row(int id) {
+		return Arrays.asList(new Field("id", id), new Field("name", id % 2 == 0 ? MULTI_BYTE : "it's " + id),
+				new Field("amount", id == 3 ? Long.MIN_VALUE : (long) id * 7), new Field("note", null),
+				new Field("price", new BigDecimal("9.90")), new Field("enabled", id % 2 == 0));
+	}
+
+	private static List<Entity> rows(int count) {
+		List<Entity> entities = new ArrayList<>();
+		for (int i = 1; i <= count; i++) {
+			entities.add(new Entity("t_batch", row(i)));
+		}
+		return entities;
+	}
+
+	private static void add(StringBuilder sb, String name, Function<List<Object>, String> build) {
+		sb.append(name).append(" inline: ").append(build.apply(null)).append('\n');
+		List<Object> params = new ArrayList<>();
+		String sql = build.apply(params);
+		sb.append(name).append(" bound: ").append(sql).append(" | ").append(params).append('\n');
+	}
+
+	private static void addStatements(StringBuilder sb, String name, List<SqlStatement> statements) {
+		for (SqlStatement statement : statements) {
+			sb.append(name).append(": ").append(statement.getSql()).append(" | ")
+					.append(statement.isPrepared() ? statement.getParams() : "-").append('\n');
+		}
+	}
+
+	private static String readGoldenFile() throws IOException {
+		try (InputStream in = MysqlUtilsGoldenTest.class.getResourceAsStream("/mysql-utils-golden.txt")) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			for (int n; (n = in.read(buffer)) > 0;) {
+				out.write(buffer, 0, n);
+			}
+			return new String(out.toByteArray(), StandardCharsets.UTF_8);
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package com.github.microprograms.micro_oss_mysql.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class PreparedStatementCacheTest {
+
+	@Test
+	public void reusesStatementsAcrossCheckouts() throws SQLException {
+		FakeConnection physical = new FakeConnection();
+		PreparedStatementCache cache = new PreparedStatementCache(10);
+		PreparedStatement ps = cache.prepare(physical.checkout(), "SELECT 1;");
+		assertSame(ps, cache.prepare(physical.checkout(), "SELECT 1;"));
+		assertEquals(1, physical.prepared.size());
+	}
+
+	@Test
+	public void evictsLeastRecentlyUsed() throws SQLException {
+		FakeConnection physical = new FakeConnection();
+		PreparedStatementCache cache = new PreparedStatementCache(2);
+		Connection conn = physical.checkout();
+		PreparedStatement a = cache.prepare(conn, "a");
+		PreparedStatement b = cache.prepare(conn, "b");
+		cache.prepare(conn, "a");
+		cache.prepare(conn, "c");
+		assertTrue(b.isClosed());
+		assertFalse(a.isClosed());
+		assertSame(a, cache.prepare(conn, "a"));
+		assertNotSame(b, cache.prepare(conn, "b"));
+	}
+
+	@Test
+	public void dropsStatementsOfClosedConnections() throws SQLException {
+		FakeConnection first = new FakeConnection();
+		PreparedStatementCache cache = new PreparedStatementCache(10);
+		PreparedStatement ps = cache.prepare(first.checkout(), "a");
+		first.closed = true;
+		cache.prepare(new FakeConnection().checkout(), "a");
+		assertTrue(ps.isClosed());
+	}
+
+	// a physical connection, handed out behind a new wrapper on every checkout as a pool does
+	private static class FakeConnection {
+		final List<PreparedStatement> prepared = new ArrayList<>();
+		boolean closed;
+		final Connection connection = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+					case "prepareStatement":
+						PreparedStatement ps = newStatement();
+						prepared.add(ps);
+						return ps;
+					case "isClosed":
+						return closed;
+					case "hashCode":
+						return System.identityHashCode(proxy);
+					case "equals":
+						return proxy == args[0];
+					default:
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+
+		Connection checkout() {
+			return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Connection.class },
+					(proxy, method, args) -> {
+						switch (method.getName()) {
+						case "isWrapperFor":
+							return true;
+						case "unwrap":
+							return connection;
+						default:
+							return method.invoke(connection, args);
+						}
+					});
+		}
+
+		private static PreparedStatement newStatement() {
+			boolean[] closed = new boolean[1];
+			return (PreparedStatement) Proxy.newProxyInstance(PreparedStatementCacheTest.class.getClassLoader(),
+					new Class<?>[] { PreparedStatement.class }, (proxy, method, args) -> {
+						switch (method.getName()) {
+						case "close":
+							closed[0] = true;
+							return null;
+						case "isClosed":
+							return closed[0];
+						case "clearParameters":
+							return null;
+						case "hashCode":
+							return System.identityHashCode(proxy);
+						case "equals":
+							return proxy == args[0];
+						default:
+							throw new UnsupportedOperationException(method.getName());
+						}
+					});
+		}
+	}
+}